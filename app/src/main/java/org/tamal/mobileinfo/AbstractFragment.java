@@ -1,49 +1,58 @@
 package org.tamal.mobileinfo;
 
-import android.graphics.Typeface;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.Html;
 import android.text.Spanned;
 import android.text.method.LinkMovementMethod;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import androidx.annotation.DrawableRes;
 import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
-import androidx.annotation.StringRes;
-import androidx.constraintlayout.widget.Barrier;
-import androidx.constraintlayout.widget.ConstraintLayout;
-import androidx.constraintlayout.widget.ConstraintSet;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.lang.reflect.Field;
+import org.tamal.mobileinfo.core.Utils;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public abstract class AbstractFragment extends Fragment {
 
-    private static final String TAG = "AbstractFragment";
     static final String ROOT = "https://developer.android.com/reference/";
-    Adapter adapter;
-    private static Field constrainedWidth;
-
-    @StringRes
-    abstract int getTitle();
-
-    @DrawableRes
-    abstract int getIcon();
+    // Replaced with the view, read by the decorators set from other threads
+    volatile Adapter adapter;
+    private boolean loaded;
+    private final int createViewSpan = Tracing.id(getClass().getSimpleName() + ".onCreateView");
+    private final int loadSpan = Tracing.id(getClass().getSimpleName() + ".onLoad");
+
+    static {
+        SdkConstants.install();
+    }
 
+    /**
+     * Traces {@link #createView}, which subclasses override instead.
+     */
     @Override
-    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+    public final View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        long start = Tracing.begin(createViewSpan);
+        try {
+            return createView(inflater, container, savedInstanceState);
+        } finally {
+            Tracing.end(createViewSpan, start);
+        }
+    }
+
+    View createView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         RecyclerView recyclerView = (RecyclerView) inflater.inflate(R.layout.recycler_view, container, false);
         recyclerView.setHasFixedSize(true);
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
@@ -52,6 +61,55 @@ public abstract class AbstractFragment extends Fragment {
         return recyclerView;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        if (getUserVisibleHint()) {
+            load();
+        }
+    }
+
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        if (isVisibleToUser) {
+            load();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        loaded = false;
+    }
+
+    private void load() {
+        if (!loaded && getView() != null) {
+            loaded = true;
+            long start = Tracing.begin(loadSpan);
+            try {
+                onLoad();
+            } finally {
+                Tracing.end(loadSpan, start);
+            }
+        }
+    }
+
+    /**
+     * @return whether {@link #onLoad} ran for the current view. Until then the adapter of a
+     * recreated view is empty, whatever the decorators hold.
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Fills the page the first time it is selected after its view was created. The pager
+     * creates the pages next to the selected one ahead of time, they stay idle until then.
+     */
+    void onLoad() {
+    }
+
     Decorator addHeader(Class<?> cls) {
         while (cls.getComponentType() != null) {
             cls = cls.getComponentType();
@@ -79,8 +137,16 @@ public abstract class AbstractFragment extends Fragment {
             }
         }
         Decorator decorator = new Decorator() {
+
+            private final List<Row> rows = Collections.singletonList(new Row(this, header, null));
+
             @Override
-            public void decorate(ViewHolder viewHolder) {
+            public List<Row> getRows() {
+                return rows;
+            }
+
+            @Override
+            public void decorate(ViewHolder viewHolder, Row row) {
                 TextView textView = (TextView) viewHolder.itemView;
                 if (header instanceof Spanned) {
                     textView.setClickable(true);
@@ -89,6 +155,11 @@ public abstract class AbstractFragment extends Fragment {
                 textView.setText(header);
             }
 
+            @Override
+            public void decorateValue(ViewHolder viewHolder, Row row) {
+                decorate(viewHolder, row);
+            }
+
             @Override
             public int getViewType() {
                 return R.layout.view_header;
@@ -98,9 +169,25 @@ public abstract class AbstractFragment extends Fragment {
         return decorator;
     }
 
+    /**
+     * Shows the rows of every {@link Decorator} one after another. A decorator is a section of
+     * rows, such as all the entries of a {@link KeyValues}, and each row is recycled on its own.
+     * <p>
+     * Changes may come from any thread. They are coalesced by the {@link UpdateScheduler} into
+     * one submission of the new rows per frame to an {@link AsyncListDiffer}, which diffs them
+     * against the shown ones on a background thread and dispatches only the rows which changed.
+     */
     class Adapter extends RecyclerView.Adapter<ViewHolder> {
 
-        private List<Decorator> list = new ArrayList<>();
+        // Guarded by itself
+        private final List<Decorator> list = new ArrayList<>();
+        private final AsyncListDiffer<Row> differ = new AsyncListDiffer<>(this, ROW_DIFF);
+        private final Runnable submit = new Runnable() {
+            @Override
+            public void run() {
+                submit();
+            }
+        };
 
         @NonNull
         @Override
@@ -110,140 +197,239 @@ public abstract class AbstractFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-            list.get(position).decorate(holder);
+            Row row = differ.getCurrentList().get(position);
+            row.decorator.decorate(holder, row);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+            Row row = differ.getCurrentList().get(position);
+            row.decorator.decorateValue(holder, row);
         }
 
         @Override
         public int getItemCount() {
-            return list.size();
+            return differ.getCurrentList().size();
         }
 
         @LayoutRes
         @Override
         public int getItemViewType(int position) {
-            return list.get(position).getViewType();
+            return differ.getCurrentList().get(position).decorator.getViewType();
         }
 
+        /**
+         * Adds the decorator at the end, or shows its new rows if already added.
+         */
         void add(Decorator decorator) {
-            int position = list.indexOf(decorator);
-            if (position == -1) {
-                list.add(decorator);
-                adapter.notifyItemInserted(list.size() - 1);
-            } else {
-                list.remove(decorator);
-                list.add(position, decorator);
-                adapter.notifyItemChanged(position);
+            synchronized (list) {
+                if (!list.contains(decorator)) {
+                    list.add(decorator);
+                }
             }
+            UpdateScheduler.getInstance().schedule(this, submit);
         }
 
         boolean remove(Decorator decorator) {
-            int position = list.indexOf(decorator);
-            if (position != -1) {
-                list.remove(position);
-                adapter.notifyItemRemoved(position);
+            boolean removed;
+            synchronized (list) {
+                removed = list.remove(decorator);
+            }
+            if (removed) {
+                UpdateScheduler.getInstance().schedule(this, submit);
             }
-            return position != -1;
+            return removed;
+        }
+
+        /**
+         * Rebinds the values of every shown row of the decorator, for when they are shown
+         * differently although they did not change.
+         */
+        void invalidate(Decorator decorator) {
+            notifyChanged(decorator, PAYLOAD_VALUE);
+        }
+
+        /**
+         * Rebinds every shown row of the decorator, keys included.
+         */
+        void refresh(Decorator decorator) {
+            notifyChanged(decorator, null);
+        }
+
+        private void notifyChanged(Decorator decorator, Object payload) {
+            List<Row> rows = differ.getCurrentList();
+            int start = -1;
+            int end = -1;
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).decorator == decorator) {
+                    if (start == -1) {
+                        start = i;
+                    }
+                    end = i + 1;
+                }
+            }
+            if (start != -1) {
+                notifyItemRangeChanged(start, end - start, payload);
+            }
+        }
+
+        private void submit() {
+            List<Row> rows = new ArrayList<>(differ.getCurrentList().size());
+            synchronized (list) {
+                for (Decorator decorator : list) {
+                    rows.addAll(decorator.getRows());
+                }
+            }
+            differ.submitList(rows);
         }
 
     }
 
+    /**
+     * The payload of a row whose key is the same but whose value changed.
+     */
+    private static final Object PAYLOAD_VALUE = new Object();
+
+    private static final DiffUtil.ItemCallback<Row> ROW_DIFF = new DiffUtil.ItemCallback<Row>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            return oldRow.decorator == newRow.decorator && Objects.equals(oldRow.key, newRow.key);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            return Objects.deepEquals(oldRow.value, newRow.value);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Row oldRow, @NonNull Row newRow) {
+            return PAYLOAD_VALUE;
+        }
+    };
+
     static class ViewHolder extends RecyclerView.ViewHolder {
 
+        // Only in key value rows
+        final TextView keyView;
+        final TextView valueView;
+
         ViewHolder(View itemView) {
             super(itemView);
+            keyView = itemView.findViewById(R.id.key);
+            valueView = itemView.findViewById(R.id.value);
+        }
+    }
+
+    /**
+     * A row of a {@link Decorator}, immutable. Rows of the same decorator and key are the same
+     * item, with changed contents if their values differ.
+     */
+    static final class Row {
+
+        final Decorator decorator;
+        final Object key;
+        final Object value;
+
+        Row(Decorator decorator, Object key, Object value) {
+            this.decorator = decorator;
+            this.key = key;
+            this.value = value;
         }
     }
 
     interface Decorator {
-        void decorate(ViewHolder viewHolder);
+
+        /**
+         * @return the rows of this decorator, in order.
+         */
+        List<Row> getRows();
+
+        void decorate(ViewHolder viewHolder, Row row);
+
+        /**
+         * Rebinds only what shows the value of a row bound before with the same key.
+         */
+        void decorateValue(ViewHolder viewHolder, Row row);
 
         @LayoutRes
         int getViewType();
     }
 
+    /**
+     * The entries of a map, one row each. May be set from any thread.
+     */
     class KeyValues implements Decorator {
 
-        private Map<?, ?> map;
+        private volatile List<Row> rows = Collections.emptyList();
         boolean verticalOrientation;
 
         KeyValues set(Map<?, ?> map) {
-            this.map = map == null ? Collections.emptyMap() : Collections.unmodifiableMap(map);
+            if (map == null) {
+                map = Collections.emptyMap();
+            }
+            List<Row> rows = new ArrayList<>(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                rows.add(new Row(this, entry.getKey(), entry.getValue()));
+            }
+            this.rows = rows;
             adapter.add(this);
             return this;
         }
 
-        @Override
-        public void decorate(ViewHolder viewHolder) {
-            ConstraintLayout layout = (ConstraintLayout) viewHolder.itemView;
-            layout.removeAllViews();
-            ConstraintSet set = new ConstraintSet();
-            set.clone(layout);
-            int barrierId = View.NO_ID;
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-                TextView key = buildTextView(set);
-                key.setTypeface(Typeface.DEFAULT_BOLD);
-                layout.addView(key);
-                set.connect(key.getId(), ConstraintSet.START, ConstraintSet.PARENT_ID, ConstraintSet.START);
-                if (barrierId == View.NO_ID) {
-                    set.connect(key.getId(), ConstraintSet.TOP, ConstraintSet.PARENT_ID, ConstraintSet.TOP);
-                } else {
-                    set.connect(key.getId(), ConstraintSet.TOP, barrierId, ConstraintSet.BOTTOM);
-                }
-                TextView value = buildTextView(set);
-                value.setTextAlignment(View.TEXT_ALIGNMENT_TEXT_END);
-                layout.addView(value);
-                if (verticalOrientation) {
-                    set.connect(value.getId(), ConstraintSet.TOP, key.getId(), ConstraintSet.BOTTOM);
-                    barrierId = value.getId();
-                } else {
-                    set.connect(value.getId(), ConstraintSet.START, key.getId(), ConstraintSet.END);
-                    set.connect(value.getId(), ConstraintSet.END, ConstraintSet.PARENT_ID, ConstraintSet.END);
-                    set.connect(value.getId(), ConstraintSet.BASELINE, key.getId(), ConstraintSet.BASELINE);
-                    set.setHorizontalBias(value.getId(), 1.0f);
-                    constrainWidth(set, value.getId());
-
-                    barrierId = View.generateViewId();
-                    set.createBarrier(barrierId, Barrier.BOTTOM, key.getId(), value.getId());
-                }
-                decorate(entry.getKey(), entry.getValue(), key, value);
-            }
-            set.applyTo(layout);
+        /**
+         * Shows the rows as they are, after the decorators added before. For a new view, whose
+         * adapter shows none of them yet.
+         */
+        KeyValues show() {
+            adapter.add(this);
+            return this;
         }
 
-        void decorate(Object key, Object value, TextView keyView, TextView valueView) {
-            keyView.setText(Utils.toString(key));
-            valueView.setText(Utils.toString(value));
+        /**
+         * Rebinds the values of every row.
+         */
+        void invalidate() {
+            adapter.invalidate(this);
         }
 
-        private TextView buildTextView(ConstraintSet set) {
-            TextView textView = new TextView(getContext());
-            int id = View.generateViewId();
-            textView.setId(id);
-            textView.setTextIsSelectable(true);
-            set.constrainHeight(id, ConstraintSet.WRAP_CONTENT);
-            set.constrainWidth(id, ConstraintSet.WRAP_CONTENT);
-            return textView;
+        /**
+         * Rebinds the keys and values of every row.
+         */
+        void refresh() {
+            adapter.refresh(this);
         }
 
-        private void constrainWidth(ConstraintSet set, int viewId) {
-            Object constraint = set.getParameters(viewId);
-            try {
-                if (constrainedWidth == null) {
-                    Object object = set.getParameters(viewId);
-                    constrainedWidth = object.getClass().getField("constrainedWidth");
-                    constrainedWidth.setAccessible(true);
-                }
-                constrainedWidth.setBoolean(constraint, true);
-            } catch (NoSuchFieldException | IllegalAccessException e) {
-                Log.e(TAG, e.toString());
-            }
+        @Override
+        public List<Row> getRows() {
+            return rows;
+        }
+
+        @Override
+        public void decorate(ViewHolder viewHolder, Row row) {
+            decorateKey(row.key, viewHolder.keyView);
+            decorateValue(row.key, row.value, viewHolder.valueView);
+        }
 
+        @Override
+        public void decorateValue(ViewHolder viewHolder, Row row) {
+            decorateValue(row.key, row.value, viewHolder.valueView);
+        }
+
+        void decorateKey(Object key, TextView keyView) {
+            keyView.setText(Utils.toString(key));
         }
 
+        void decorateValue(Object key, Object value, TextView valueView) {
+            valueView.setText(Utils.toString(value));
+        }
 
         @Override
         public int getViewType() {
-            return R.layout.constraint_layout;
+            return verticalOrientation ? R.layout.view_key_value_vertical : R.layout.view_key_value;
         }
     }
 }
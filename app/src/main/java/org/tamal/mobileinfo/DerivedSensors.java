@@ -0,0 +1,304 @@
+package org.tamal.mobileinfo;
+
+import android.content.res.Resources;
+import android.hardware.Sensor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import org.tamal.mobileinfo.core.SensorFormat;
+import org.tamal.mobileinfo.core.SensorFusion;
+import org.tamal.mobileinfo.core.SensorRingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Virtual sensors computed by a {@link SensorFusion} from the raw accelerometer, magnetometer
+ * and gyroscope of a {@link SensorEngine}, on a background thread which reads their ring
+ * buffers once accelerometer samples arrive. Each derived sensor has a ring buffer of its own,
+ * read like the hardware ones.
+ * <p>
+ * Where the device has the fused hardware sensors, the derived orientation and linear
+ * acceleration are compared against them.
+ */
+final class DerivedSensors implements Runnable {
+
+    static final int ORIENTATION = 0;
+    static final int TILT = 1;
+    static final int LINEAR_ACCELERATION = 2;
+    static final int HEADING = 3;
+
+    private static final String TAG = "DerivedSensors";
+    // The samples arriving within this delay are read together
+    private static final int COALESCE_MILLIS = 10;
+    private static final int CAPACITY = 256;
+
+    private final SensorEngine engine;
+    private final int accelerometer;
+    private final int magneticField;
+    private final int gyroscope;
+    private final int rotationVector;
+    private final int linearAcceleration;
+    private final int[] types;
+    private final SensorRingBuffer[] buffers;
+    private final int[] sources;
+    private final SensorFusion fusion = new SensorFusion();
+    private final float[] sample = new float[SensorRingBuffer.MAX_VALUES];
+    private final float[] values = new float[3];
+    private final float[] hardwareMatrix = new float[9];
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Runs on the capture thread after every accelerometer sample
+    private final Runnable wake = new Runnable() {
+        @Override
+        public void run() {
+            if (!scheduled.getAndSet(true)) {
+                handler.postDelayed(DerivedSensors.this, COALESCE_MILLIS);
+            }
+        }
+    };
+    // The labels of the accuracy, from the resources
+    private final String vsRotationVector;
+    private final String vsLinearAcceleration;
+    private final String degrees;
+    private final String ms2;
+    // Only used on the background thread
+    private long accelerometerRead;
+    private long gyroscopeRead;
+    private double orientationErrorSum;
+    private double linearErrorSum;
+    private int orientationErrors;
+    private int linearErrors;
+    // The mean differences from the hardware sensors, NaN until compared
+    private volatile double orientationError = Double.NaN;
+    private volatile double linearError = Double.NaN;
+
+    DerivedSensors(SensorEngine engine, Resources resources) {
+        this.engine = engine;
+        vsRotationVector = resources.getString(R.string.sensor_vs_rotation_vector);
+        vsLinearAcceleration = resources.getString(R.string.sensor_vs_linear_acceleration);
+        degrees = resources.getString(R.string.sensor_unit_deg);
+        ms2 = resources.getString(R.string.sensor_unit_ms2);
+        accelerometer = find(Sensor.TYPE_ACCELEROMETER);
+        magneticField = find(Sensor.TYPE_MAGNETIC_FIELD);
+        gyroscope = find(Sensor.TYPE_GYROSCOPE);
+        rotationVector = find(Sensor.TYPE_ROTATION_VECTOR);
+        linearAcceleration = find(Sensor.TYPE_LINEAR_ACCELERATION);
+        List<Integer> available = new ArrayList<>();
+        if (accelerometer >= 0) {
+            if (magneticField >= 0) {
+                available.add(ORIENTATION);
+            }
+            available.add(TILT);
+            available.add(LINEAR_ACCELERATION);
+            if (magneticField >= 0) {
+                available.add(HEADING);
+            }
+        }
+        types = new int[available.size()];
+        buffers = new SensorRingBuffer[types.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = available.get(i);
+            buffers[i] = new SensorRingBuffer(CAPACITY);
+        }
+        List<Integer> slots = new ArrayList<>();
+        for (int slot : new int[]{accelerometer, magneticField, gyroscope, rotationVector, linearAcceleration}) {
+            if (slot >= 0 && types.length > 0) {
+                slots.add(slot);
+            }
+        }
+        sources = new int[slots.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = slots.get(i);
+        }
+        thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    private int find(int type) {
+        for (int slot = 0; slot < engine.size(); slot++) {
+            if (engine.getSensor(slot).getType() == type) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of derived sensors this device can have.
+     */
+    int size() {
+        return types.length;
+    }
+
+    /**
+     * @return {@link #ORIENTATION}, {@link #TILT}, {@link #LINEAR_ACCELERATION} or {@link #HEADING}.
+     */
+    int getType(int index) {
+        return types[index];
+    }
+
+    SensorRingBuffer getBuffer(int index) {
+        return buffers[index];
+    }
+
+    /**
+     * @return the slots of the hardware sensors which must be captured while derived ones are shown.
+     */
+    int[] getSources() {
+        return sources.clone();
+    }
+
+    void start() {
+        if (types.length == 0) {
+            return;
+        }
+        handler.removeCallbacks(this);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Only new samples
+                accelerometerRead = engine.getBuffer(accelerometer).sequence();
+                gyroscopeRead = gyroscope >= 0 ? engine.getBuffer(gyroscope).sequence() : 0;
+            }
+        });
+        engine.setObserver(accelerometer, wake);
+    }
+
+    void stop() {
+        if (types.length == 0) {
+            return;
+        }
+        engine.setObserver(accelerometer, null);
+        handler.removeCallbacks(this);
+        scheduled.set(false);
+    }
+
+    void release() {
+        stop();
+        thread.quitSafely();
+    }
+
+    /**
+     * Appends the mean difference of the derived sensor from the hardware one, if compared.
+     */
+    StringBuilder appendAccuracy(int index, StringBuilder sb) {
+        switch (types[index]) {
+            case ORIENTATION:
+                if (!Double.isNaN(orientationError)) {
+                    SensorFormat.appendFixed(sb.append(vsRotationVector), orientationError, 2).append(degrees);
+                }
+                break;
+            case LINEAR_ACCELERATION:
+                if (!Double.isNaN(linearError)) {
+                    SensorFormat.appendFixed(sb.append(vsLinearAcceleration), linearError, 3).append(' ').append(ms2);
+                }
+                break;
+        }
+        return sb;
+    }
+
+    /**
+     * Feeds the new gyroscope and accelerometer samples to the fusion in timestamp order, the
+     * gyroscope only up to the newest accelerometer sample so that one arriving late is still
+     * in order. The magnetic field is only sampled at its latest.
+     */
+    @Override
+    public void run() {
+        scheduled.set(false);
+        if (magneticField >= 0) {
+            SensorRingBuffer buffer = engine.getBuffer(magneticField);
+            if (buffer.readLatest(sample) >= 3) {
+                fusion.onMagneticField(sample);
+            }
+        }
+        SensorRingBuffer accelerometerBuffer = engine.getBuffer(accelerometer);
+        SensorRingBuffer gyroscopeBuffer = gyroscope >= 0 ? engine.getBuffer(gyroscope) : null;
+        long accelerometerEnd = accelerometerBuffer.sequence();
+        long gyroscopeEnd = gyroscopeBuffer != null ? gyroscopeBuffer.sequence() : 0;
+        // Skips what the writer already overwrote
+        accelerometerRead = Math.max(accelerometerRead, accelerometerEnd - accelerometerBuffer.capacity());
+        if (gyroscopeBuffer != null) {
+            gyroscopeRead = Math.max(gyroscopeRead, gyroscopeEnd - gyroscopeBuffer.capacity());
+        }
+        while (accelerometerRead < accelerometerEnd) {
+            long timestamp = accelerometerBuffer.timestamp(accelerometerRead);
+            if (gyroscopeRead < gyroscopeEnd) {
+                long gyroscopeTimestamp = gyroscopeBuffer.timestamp(gyroscopeRead);
+                if (gyroscopeTimestamp <= timestamp) {
+                    if (gyroscopeBuffer.read(gyroscopeRead, sample) >= 3 && gyroscopeTimestamp != Long.MIN_VALUE) {
+                        fusion.onGyroscope(gyroscopeTimestamp, sample);
+                    }
+                    gyroscopeRead++;
+                    continue;
+                }
+            }
+            if (accelerometerBuffer.read(accelerometerRead, sample) >= 3 && timestamp != Long.MIN_VALUE) {
+                fusion.onAccelerometer(timestamp, sample);
+                write(timestamp);
+            }
+            accelerometerRead++;
+        }
+        compare();
+    }
+
+    private void write(long timestamp) {
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case ORIENTATION:
+                    if (!fusion.hasRotation()) {
+                        continue;
+                    }
+                    // In degrees and in the order of TYPE_ORIENTATION
+                    float[] orientation = fusion.getOrientation();
+                    values[0] = (float) Math.toDegrees(orientation[0]);
+                    values[1] = (float) Math.toDegrees(orientation[1]);
+                    values[2] = (float) Math.toDegrees(orientation[2]);
+                    buffers[i].write(timestamp, 0, values, 3);
+                    break;
+                case TILT:
+                    values[0] = fusion.getTilt();
+                    buffers[i].write(timestamp, 0, values, 1);
+                    break;
+                case LINEAR_ACCELERATION:
+                    buffers[i].write(timestamp, 0, fusion.getLinearAcceleration(), 3);
+                    break;
+                case HEADING:
+                    if (!fusion.hasRotation()) {
+                        continue;
+                    }
+                    values[0] = fusion.getHeading();
+                    buffers[i].write(timestamp, 0, values, 1);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Accumulates the difference from the newest hardware samples, if they are being captured.
+     */
+    private void compare() {
+        if (rotationVector >= 0 && fusion.hasRotation()) {
+            int count = engine.getBuffer(rotationVector).readLatest(sample);
+            if (count >= 3) {
+                SensorFusion.getRotationMatrixFromVector(hardwareMatrix, sample, count);
+                orientationErrorSum += Math.toDegrees(SensorFusion.angleBetween(fusion.getRotationMatrix(), hardwareMatrix));
+                orientationError = orientationErrorSum / ++orientationErrors;
+            }
+        }
+        if (linearAcceleration >= 0 && fusion.hasGravity()) {
+            if (engine.getBuffer(linearAcceleration).readLatest(sample) >= 3) {
+                float[] derived = fusion.getLinearAcceleration();
+                double dx = derived[0] - sample[0];
+                double dy = derived[1] - sample[1];
+                double dz = derived[2] - sample[2];
+                linearErrorSum += Math.sqrt(dx * dx + dy * dy + dz * dz);
+                linearError = linearErrorSum / ++linearErrors;
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package org.tamal.mobileinfo;
+
+import android.os.Process;
+import android.util.Log;
+import android.util.Xml;
+
+import org.tamal.mobileinfo.core.FontCoverage;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the glyph count and code point coverage of the system font families. Every font file
+ * under {@code /system/fonts} is memory-mapped and its cmap parsed in place, in parallel on
+ * every core; the results are cached on disk by file path, size and modification time, so
+ * only the fonts changed by a system update are parsed again. The families are then resolved
+ * to their regular font, as {@code /system/etc/fonts.xml} declares them.
+ */
+final class FontInspector {
+
+    private static final String TAG = "FontInspector";
+    private static final File FONTS_DIR = new File("/system/fonts");
+    private static final File FONTS_XML = new File("/system/etc/fonts.xml");
+    private static final String CACHE = "font-coverage.bin";
+    private static final int CACHE_VERSION = 1;
+    private static final int REGULAR = 400;
+    private static final int INSPECT_SPAN = Tracing.id("FontInspector.inspect");
+    // Guarded by FontInspector.class
+    private static Map<String, FontCoverage> families;
+
+    private FontInspector() {
+    }
+
+    /**
+     * Reads and writes files and parses fonts, not on the main thread.
+     *
+     * @return the coverage of the font families by name, aliases included.
+     */
+    static synchronized Map<String, FontCoverage> inspect(File cacheDir) {
+        if (families != null) {
+            return families;
+        }
+        long start = Tracing.begin(INSPECT_SPAN);
+        try {
+            Map<String, FontCoverage[]> files = index(cacheDir);
+            families = Collections.unmodifiableMap(resolve(files));
+            return families;
+        } finally {
+            Tracing.end(INSPECT_SPAN, start);
+        }
+    }
+
+    /**
+     * @return the fonts of every font file by path, from the cache or parsed.
+     */
+    private static Map<String, FontCoverage[]> index(File cacheDir) {
+        File cache = new File(cacheDir, CACHE);
+        Map<String, CachedFile> cached = readCache(cache);
+        File[] list = FONTS_DIR.listFiles();
+        Map<String, FontCoverage[]> fonts = new HashMap<>();
+        List<CachedFile> missing = new ArrayList<>();
+        for (File file : list == null ? new File[0] : list) {
+            String name = file.getName().toLowerCase();
+            if (!name.endsWith(".ttf") && !name.endsWith(".otf") && !name.endsWith(".ttc")) {
+                continue;
+            }
+            CachedFile entry = cached.get(file.getPath());
+            if (entry != null && entry.length == file.length() && entry.lastModified == file.lastModified()) {
+                fonts.put(entry.path, entry.fonts);
+            } else {
+                missing.add(new CachedFile(file.getPath(), file.length(), file.lastModified(), null));
+            }
+        }
+        if (missing.isEmpty() && fonts.size() == cached.size()) {
+            return fonts;
+        }
+        parse(missing);
+        List<CachedFile> entries = new ArrayList<>(missing);
+        for (Map.Entry<String, FontCoverage[]> entry : fonts.entrySet()) {
+            entries.add(cached.get(entry.getKey()));
+        }
+        for (CachedFile entry : missing) {
+            fonts.put(entry.path, entry.fonts);
+        }
+        writeCache(cache, entries);
+        return fonts;
+    }
+
+    /**
+     * Parses the files in parallel, a file which is not a valid font has no fonts.
+     */
+    private static void parse(List<CachedFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), files.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, TAG + "-" + count.incrementAndGet());
+            }
+        });
+        List<Callable<FontCoverage[]>> tasks = new ArrayList<>(files.size());
+        for (final CachedFile file : files) {
+            tasks.add(new Callable<FontCoverage[]>() {
+                @Override
+                public FontCoverage[] call() throws IOException {
+                    // The mapping outlives the channel, and is read in place
+                    try (FileChannel channel = new FileInputStream(file.path).getChannel()) {
+                        ByteBuffer font = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                        return FontCoverage.parse(font);
+                    }
+                }
+            });
+        }
+        try {
+            List<Future<FontCoverage[]>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < files.size(); i++) {
+                CachedFile file = files.get(i);
+                try {
+                    file.fonts = results.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Cannot parse " + file.path, e.getCause());
+                    file.fonts = new FontCoverage[0];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (CachedFile file : files) {
+                if (file.fonts == null) {
+                    file.fonts = new FontCoverage[0];
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Maps every family and alias of fonts.xml to the coverage of its font of regular weight
+     * and normal style, or of the weight the alias names.
+     */
+    private static Map<String, FontCoverage> resolve(Map<String, FontCoverage[]> files) {
+        Map<String, Map<Integer, FontCoverage>> weights = new HashMap<>();
+        Map<String, String[]> aliases = new HashMap<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(FONTS_XML))) {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(in, null);
+            Map<Integer, FontCoverage> family = null;
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.END_TAG && "family".equals(parser.getName())) {
+                    family = null;
+                }
+                if (event != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                switch (parser.getName()) {
+                    case "family":
+                        String name = parser.getAttributeValue(null, "name");
+                        if (name != null) {
+                            family = new HashMap<>();
+                            weights.put(name, family);
+                        }
+                        break;
+                    case "alias":
+                        aliases.put(parser.getAttributeValue(null, "name"), new String[]{
+                                parser.getAttributeValue(null, "to"), parser.getAttributeValue(null, "weight")});
+                        break;
+                    case "font":
+                        if (family == null || "italic".equals(parser.getAttributeValue(null, "style"))) {
+                            break;
+                        }
+                        int weight = parseInt(parser.getAttributeValue(null, "weight"), REGULAR);
+                        int index = parseInt(parser.getAttributeValue(null, "index"), 0);
+                        FontCoverage[] fonts = files.get(new File(FONTS_DIR, readFileName(parser)).getPath());
+                        if (fonts != null && index >= 0 && index < fonts.length && !family.containsKey(weight)) {
+                            family.put(weight, fonts[index]);
+                        }
+                        break;
+                }
+            }
+        } catch (IOException | XmlPullParserException e) {
+            Log.w(TAG, "Cannot read " + FONTS_XML, e);
+        }
+        Map<String, FontCoverage> coverage = new HashMap<>();
+        for (Map.Entry<String, Map<Integer, FontCoverage>> family : weights.entrySet()) {
+            FontCoverage font = getFont(family.getValue(), REGULAR);
+            if (font != null) {
+                coverage.put(family.getKey(), font);
+            }
+        }
+        for (Map.Entry<String, String[]> alias : aliases.entrySet()) {
+            Map<Integer, FontCoverage> family = weights.get(alias.getValue()[0]);
+            FontCoverage font = family == null ? null : getFont(family, parseInt(alias.getValue()[1], REGULAR));
+            if (font != null && alias.getKey() != null) {
+                coverage.put(alias.getKey(), font);
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * @return the font of {@code weight}, or of the regular weight, or any.
+     */
+    private static FontCoverage getFont(Map<Integer, FontCoverage> family, int weight) {
+        FontCoverage font = family.get(weight);
+        if (font == null) {
+            font = family.get(REGULAR);
+        }
+        if (font == null && !family.isEmpty()) {
+            font = family.values().iterator().next();
+        }
+        return font;
+    }
+
+    /**
+     * Reads the text of a font element, up to its end or its first child such as an axis.
+     */
+    private static String readFileName(XmlPullParser parser) throws IOException, XmlPullParserException {
+        StringBuilder sb = new StringBuilder();
+        for (int event = parser.next(); event == XmlPullParser.TEXT; event = parser.next()) {
+            sb.append(parser.getText());
+        }
+        return sb.toString().trim();
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Map<String, CachedFile> readCache(File cache) {
+        Map<String, CachedFile> files = new HashMap<>();
+        if (!cache.exists()) {
+            return files;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)))) {
+            if (in.readInt() != CACHE_VERSION) {
+                return files;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                FontCoverage[] fonts = new FontCoverage[in.readInt()];
+                for (int f = 0; f < fonts.length; f++) {
+                    fonts[f] = FontCoverage.read(in);
+                }
+                files.put(path, new CachedFile(path, length, lastModified, fonts));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + cache, e);
+            files.clear();
+        }
+        return files;
+    }
+
+    private static void writeCache(File cache, List<CachedFile> files) {
+        // Replaces the file only once completely written
+        File temporary = new File(cache.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(files.size());
+            for (CachedFile file : files) {
+                out.writeUTF(file.path);
+                out.writeLong(file.length);
+                out.writeLong(file.lastModified);
+                out.writeInt(file.fonts.length);
+                for (FontCoverage font : file.fonts) {
+                    font.write(out);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + temporary, e);
+            return;
+        }
+        if (!temporary.renameTo(cache)) {
+            Log.w(TAG, "Cannot rename " + temporary);
+        }
+    }
+
+    private static final class CachedFile {
+
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private FontCoverage[] fonts;
+
+        CachedFile(String path, long length, long lastModified, FontCoverage[] fonts) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fonts = fonts;
+        }
+    }
+}
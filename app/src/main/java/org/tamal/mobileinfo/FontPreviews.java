@@ -0,0 +1,181 @@
+package org.tamal.mobileinfo;
+
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+/**
+ * Lays out the font samples of the bound rows on a background thread as {@link PrecomputedText},
+ * kept in a small LRU cache keyed by typeface, style, size and text, so switching back to a
+ * previous style or text is shown at once. From P only.
+ * <p>
+ * Before P a TextView cannot be given a layout made elsewhere, it lays its text out again on
+ * the main thread. A {@link StaticLayout} is built on the background thread all the same, only
+ * to warm the text measurement cache that the TextView then hits, and is dropped: the LRU cache
+ * only remembers which samples were warmed.
+ */
+final class FontPreviews {
+
+    private static final String TAG = "FontPreviews";
+    private static final int CAPACITY = 128;
+    // Cached instead of a layout before P
+    private static final Object WARMED = Boolean.TRUE;
+
+    private final LruCache<Key, Object> cache = new LruCache<>(CAPACITY);
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    FontPreviews() {
+        thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    void release() {
+        handler.removeCallbacksAndMessages(null);
+        thread.quitSafely();
+    }
+
+    /**
+     * Shows {@code text} in {@code typeface}, {@code style} and {@code sizeSp} in {@code view},
+     * at once if laid out before or if the view showed another font, otherwise once laid out
+     * off the main thread. The view keeps showing its previous sample meanwhile.
+     */
+    void bind(final TextView view, Typeface typeface, int style, float sizeSp, CharSequence text) {
+        float size = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, sizeSp, view.getResources().getDisplayMetrics());
+        final Key key = new Key(typeface, style, size, text.toString());
+        Object previous = view.getTag(R.id.font_preview);
+        view.setTag(R.id.font_preview, key);
+        Object layout = cache.get(key);
+        if (layout != null) {
+            show(view, key, layout);
+            return;
+        }
+        if (!(previous instanceof Key) || ((Key) previous).typeface != typeface) {
+            // A row scrolled into view must not show the sample of another font meanwhile
+            show(view, key, null);
+            return;
+        }
+        final TextPaint paint = new TextPaint(view.getPaint());
+        final int breakStrategy = view.getBreakStrategy();
+        final int hyphenationFrequency = view.getHyphenationFrequency();
+        final int width = Math.max(view.getWidth() - view.getPaddingLeft() - view.getPaddingRight(), 1);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Object layout = cache.get(key);
+                if (layout == null) {
+                    layout = layOut(key, paint, breakStrategy, hyphenationFrequency, width);
+                    cache.put(key, layout);
+                }
+                final Object done = layout;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Unless the view was bound to another sample meanwhile
+                        if (key.equals(view.getTag(R.id.font_preview))) {
+                            show(view, key, done);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static Object layOut(Key key, TextPaint paint, int breakStrategy, int hyphenationFrequency, int width) {
+        style(paint, key.typeface, key.style);
+        paint.setTextSize(key.size);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint)
+                    .setBreakStrategy(breakStrategy)
+                    .setHyphenationFrequency(hyphenationFrequency)
+                    .build();
+            return PrecomputedText.create(key.text, params);
+        }
+        StaticLayout.Builder.obtain(key.text, 0, key.text.length(), paint, width)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setBreakStrategy(breakStrategy)
+                .setHyphenationFrequency(hyphenationFrequency)
+                .build();
+        return WARMED;
+    }
+
+    /**
+     * What {@link TextView#setTypeface(Typeface, int)} does to the paint: the styled typeface,
+     * and fake bold or skew for what it lacks.
+     */
+    private static void style(TextPaint paint, Typeface typeface, int style) {
+        if (style > 0) {
+            Typeface styled = typeface == null ? Typeface.defaultFromStyle(style) : Typeface.create(typeface, style);
+            paint.setTypeface(styled);
+            int need = style & ~(styled == null ? 0 : styled.getStyle());
+            paint.setFakeBoldText((need & Typeface.BOLD) != 0);
+            paint.setTextSkewX((need & Typeface.ITALIC) != 0 ? -0.25f : 0);
+        } else {
+            paint.setFakeBoldText(false);
+            paint.setTextSkewX(0);
+            paint.setTypeface(typeface);
+        }
+    }
+
+    private static void show(TextView view, Key key, Object layout) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && layout instanceof PrecomputedText) {
+            PrecomputedText text = (PrecomputedText) layout;
+            // Sets the typeface, size and the rest exactly as the text was laid out with
+            view.setTextMetricsParams(text.getParams());
+            if (text.getParams().equals(view.getTextMetricsParams())) {
+                view.setText(text);
+                return;
+            }
+        }
+        view.setTypeface(key.typeface, key.style);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, key.size);
+        view.setText(key.text);
+    }
+
+    private static final class Key {
+
+        private final Typeface typeface;
+        private final int style;
+        private final float size;
+        private final String text;
+
+        Key(Typeface typeface, int style, float size, String text) {
+            this.typeface = typeface;
+            this.style = style;
+            this.size = size;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return typeface == key.typeface && style == key.style && size == key.size && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(typeface);
+            hash = 31 * hash + style;
+            hash = 31 * hash + Float.floatToIntBits(size);
+            return 31 * hash + text.hashCode();
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package org.tamal.mobileinfo;
 
+import android.content.Context;
 import android.graphics.Typeface;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CompoundButton;
@@ -15,38 +22,64 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import org.tamal.mobileinfo.core.FontCoverage;
+import org.tamal.mobileinfo.core.Utils;
+
+import java.io.File;
 import java.lang.reflect.Field;
 import java.util.Map;
 import java.util.TreeMap;
 
 public class FontsFragment extends AbstractFragment implements CompoundButton.OnCheckedChangeListener, SeekBar.OnSeekBarChangeListener, TextWatcher, View.OnClickListener {
 
+    private static final long DEBOUNCE_MILLIS = 200;
     private Switch bold;
     private Switch italic;
     private SeekBar size;
     private EditText sampleText;
     private Map<String, Typeface> fonts;
+    // The coverage of the font families by name, once inspected
+    private Map<String, FontCoverage> coverage;
+    private boolean covering = true;
     private KeyValues keyValues = new FontKeyValues();
+    private FontPreviews previews;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable invalidate = new Runnable() {
+        @Override
+        public void run() {
+            if (fonts != null) {
+                showFonts();
+            }
+            keyValues.invalidate();
+        }
+    };
 
     @SuppressWarnings("unchecked")
-    public FontsFragment() {
+    private Map<String, Typeface> loadFonts() {
         try {
             String fieldName = "sSystemFontMap";
             Field field = Typeface.class.getDeclaredField(fieldName);
             field.setAccessible(true);
-            fonts = new TreeMap((Map<String, Typeface>) field.get(null));
+            return new TreeMap((Map<String, Typeface>) field.get(null));
         } catch (NoSuchFieldException | IllegalAccessException e) {
             Toast.makeText(getContext(), e.toString(), Toast.LENGTH_SHORT).show();
-            fonts = Utils.findConstants(Typeface.class, Typeface.class, null);
+            return Utils.findConstants(Typeface.class, Typeface.class, null);
         }
     }
 
     @Override
-    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
+
+    @Override
+    View createView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         ConstraintLayout layout = (ConstraintLayout) inflater.inflate(R.layout.fragment_fonts, container, false);
         RecyclerView recyclerView = layout.findViewById(R.id.recycler_view);
         recyclerView.setHasFixedSize(true);
@@ -62,10 +95,103 @@ public class FontsFragment extends AbstractFragment implements CompoundButton.On
         italic.setOnCheckedChangeListener(this);
         size.setOnSeekBarChangeListener(this);
         sampleText.addTextChangedListener(this);
-        keyValues.set(fonts);
+        previews = new FontPreviews();
         return layout;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        handler.removeCallbacks(invalidate);
+        previews.release();
+    }
+
+    @Override
+    void onLoad() {
+        // Reflects into the system fonts only once the page is selected
+        if (fonts == null) {
+            fonts = loadFonts();
+        }
+        showFonts();
+        if (coverage == null) {
+            inspectFonts();
+        }
+    }
+
+    /**
+     * Finds which code points every font covers off the main thread, then filters the fonts
+     * and shows their glyph counts.
+     */
+    private void inspectFonts() {
+        Context context = getContext();
+        if (context == null) {
+            return;
+        }
+        final File cacheDir = context.getCacheDir();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, FontCoverage> inspected = FontInspector.inspect(cacheDir);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        coverage = inspected;
+                        if (getView() != null) {
+                            showFonts();
+                            keyValues.refresh();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows the fonts covering every character of the sample text if so chosen, and those whose
+     * coverage is not known.
+     */
+    private void showFonts() {
+        if (!covering || coverage == null) {
+            keyValues.set(fonts);
+            return;
+        }
+        CharSequence text = sampleText.getText();
+        Map<String, Typeface> covered = new TreeMap<>();
+        for (Map.Entry<String, Typeface> font : fonts.entrySet()) {
+            FontCoverage fontCoverage = coverage.get(font.getKey());
+            if (fontCoverage == null || fontCoverage.getCoverage().containsAll(text)) {
+                covered.put(font.getKey(), font.getValue());
+            }
+        }
+        keyValues.set(covered);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.fonts, menu);
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        MenuItem item = menu.findItem(R.id.action_covering);
+        if (item != null) {
+            item.setChecked(covering);
+        }
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_covering) {
+            covering = !item.isChecked();
+            item.setChecked(covering);
+            if (fonts != null && getView() != null) {
+                showFonts();
+            }
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     private int getStyle() {
         int boldStyle = bold.isChecked() ? 0x1 : 0x0;
         int italicStyle = italic.isChecked() ? 0x2 : 0x0;
@@ -74,7 +200,7 @@ public class FontsFragment extends AbstractFragment implements CompoundButton.On
 
     @Override
     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-        keyValues.set(fonts);
+        keyValues.invalidate();
     }
 
     @Override
@@ -89,7 +215,7 @@ public class FontsFragment extends AbstractFragment implements CompoundButton.On
 
     @Override
     public void onStopTrackingTouch(SeekBar seekBar) {
-        keyValues.set(fonts);
+        keyValues.invalidate();
     }
 
     @Override
@@ -99,7 +225,9 @@ public class FontsFragment extends AbstractFragment implements CompoundButton.On
 
     @Override
     public void onTextChanged(CharSequence s, int start, int before, int count) {
-        keyValues.set(fonts);
+        // Lays the samples out once typing pauses, not on every keystroke
+        handler.removeCallbacks(invalidate);
+        handler.postDelayed(invalidate, DEBOUNCE_MILLIS);
     }
 
     @Override
@@ -113,24 +241,22 @@ public class FontsFragment extends AbstractFragment implements CompoundButton.On
         sampleText.setTypeface(textView.getTypeface());
     }
 
-    @Override
-    int getTitle() {
-        return R.string.menu_fonts;
-    }
-
-    @Override
-    int getIcon() {
-        return R.drawable.ic_text;
-    }
 
     class FontKeyValues extends KeyValues {
 
         @Override
-        void decorate(Object key, Object value, TextView keyView, TextView valueView) {
-            keyView.setText(Utils.toString(key));
-            valueView.setText(sampleText.getText());
-            valueView.setTypeface((Typeface) value, getStyle());
-            valueView.setTextSize(size.getProgress() + 8);
+        void decorateKey(Object key, TextView keyView) {
+            FontCoverage fontCoverage = coverage == null ? null : coverage.get(key);
+            if (fontCoverage == null) {
+                super.decorateKey(key, keyView);
+            } else {
+                keyView.setText(getString(R.string.font_glyphs, key, fontCoverage.getGlyphCount()));
+            }
+        }
+
+        @Override
+        void decorateValue(Object key, Object value, TextView valueView) {
+            previews.bind(valueView, (Typeface) value, getStyle(), size.getProgress() + 8, sampleText.getText());
             valueView.setOnClickListener(FontsFragment.this);
         }
 
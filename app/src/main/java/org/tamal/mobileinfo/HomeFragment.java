@@ -10,25 +10,59 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.BatteryManager;
 import android.os.Build;
-import android.os.Bundle;
+import android.os.Process;
 import android.util.ArrayMap;
 import android.util.DisplayMetrics;
-import android.view.LayoutInflater;
+import android.util.Log;
 import android.view.View;
-import android.view.ViewGroup;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
+import org.tamal.mobileinfo.core.NearestConstant;
+import org.tamal.mobileinfo.core.Utils;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HomeFragment extends AbstractFragment {
 
     private static final String GRANTED = "GRANTED";
     private static final String DENIED = "DENIED";
+    private static final String TAG = "HomeFragment";
+    private static final int COLLECTOR_THREADS = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+    /**
+     * Runs the collectors of every section in parallel, off the main thread.
+     */
+    private static final ThreadPoolExecutor COLLECTORS = new ThreadPoolExecutor(COLLECTOR_THREADS, COLLECTOR_THREADS,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "Collector-" + count.incrementAndGet());
+        }
+    });
+
+    static {
+        COLLECTORS.allowCoreThreadTimeOut(true);
+    }
+
     private boolean requested;
     private int REQUEST_CODE;
     private KeyValues permissionMap = new KeyValues();
@@ -39,39 +73,136 @@ public class HomeFragment extends AbstractFragment {
     private KeyValues versionMap = new KeyValues();
     private KeyValues envMap = new KeyValues();
     private KeyValues sysPropMap = new KeyValues();
+    private KeyValues timings = new KeyValues();
+    private KeyValues performance = new KeyValues();
+    // The collectors of the sections still running, the performance is collected after them
+    private final AtomicInteger loading = new AtomicInteger();
+    // The last time each collector took, in the order they first completed
+    private final Map<String, String> times = new LinkedHashMap<>();
+    // The collectors held back until every section is shown, only used on the main thread
+    private List<Runnable> heldCollectors;
 
     @Override
-    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View view = super.onCreateView(inflater, container, savedInstanceState);
+    void onLoad() {
         Activity activity = getActivity();
         if (activity == null) {
-            return view;
+            return;
         }
+        // Every section shows its header and a placeholder right away, and its values once collected
+        heldCollectors = new ArrayList<>();
         requestPermissions(activity);
         addBatteryStatus(activity);
-        addResourceDetails();
+        addResourceDetails(activity);
         addStaticData();
-        return view;
+        addHeader(getString(R.string.collector_timings), null);
+        timings.set(placeholder(activity));
+        addHeader(getString(R.string.performance), null);
+        performance.set(placeholder(activity));
+        loading.set(heldCollectors.size());
+        for (Runnable collector : heldCollectors) {
+            COLLECTORS.execute(collector);
+        }
+        heldCollectors = null;
     }
 
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
-        configuration.set(getConfiguration(newConfig));
+        final Configuration config = new Configuration(newConfig);
+        collect(configuration, "Configuration", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return getConfiguration(config);
+            }
+        });
     }
 
-    private void requestPermissions(Activity activity) {
+    private static Map<String, String> placeholder(Context context) {
+        return Collections.singletonMap(context.getString(R.string.loading), "");
+    }
+
+    /**
+     * Shows {@code keyValues} in section order right away, with a placeholder if it is empty, and then,
+     * from the bounded executor, what the collector returns and the time it took. Does nothing until the
+     * page is loaded, such as on a configuration change or a battery broadcast for a recreated view: its
+     * sections would come before their headers, the next load collects them all.
+     */
+    private void collect(final KeyValues keyValues, final String name, final Collector collector) {
+        final Context context = getContext();
+        if (context == null || !isLoaded()) {
+            return;
+        }
+        if (keyValues.getRows().isEmpty()) {
+            keyValues.set(placeholder(context));
+        } else {
+            // The rows collected for a previous view, until collected again
+            keyValues.show();
+        }
+        final boolean held = heldCollectors != null;
+        final Adapter target = adapter;
+        final int span = Tracing.id("HomeFragment.collect " + name);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                long start = Tracing.begin(span);
+                Map<?, ?> map;
+                try {
+                    map = collector.collect();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, name, e);
+                    map = Collections.singletonMap(name, e.toString());
+                }
+                if (adapter != target) {
+                    // The view was recreated meanwhile, its load collects again
+                    Tracing.end(span, start);
+                    return;
+                }
+                keyValues.set(map);
+                double millis = Tracing.end(span, start) / 1e6;
+                synchronized (times) {
+                    times.put(name, context.getString(R.string.collector_time, millis, Thread.currentThread().getName()));
+                    timings.set(new LinkedHashMap<>(times));
+                }
+                if (held && loading.decrementAndGet() == 0) {
+                    // Includes the spans of this launch so far
+                    performance.set(Tracing.persist(context.getFilesDir()));
+                }
+            }
+        };
+        if (heldCollectors != null) {
+            heldCollectors.add(task);
+        } else {
+            COLLECTORS.execute(task);
+        }
+    }
+
+    /**
+     * Collects the values of a section, on a background thread.
+     */
+    private interface Collector {
+        Map<?, ?> collect();
+    }
+
+    private void requestPermissions(final Activity activity) {
         addHeader("Permissions", ROOT + "android/content/pm/PackageInfo.html#requestedPermissions");
+        collect(permissionMap, "Permissions", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return collectPermissions(activity);
+            }
+        });
+    }
+
+    private Map<String, String> collectPermissions(final Activity activity) {
         String[] permissions;
         try {
             permissions = activity.getPackageManager()
                     .getPackageInfo(activity.getPackageName(), PackageManager.GET_PERMISSIONS)
                     .requestedPermissions;
         } catch (PackageManager.NameNotFoundException e) {
-            Toast.makeText(activity, e.toString(), Toast.LENGTH_SHORT).show();
-            return;
+            return Collections.singletonMap("Permissions", e.toString());
         }
-        List<String> deniedPermissions = new ArrayList<>();
+        final List<String> deniedPermissions = new ArrayList<>();
         Map<String, String> map = new TreeMap<>();
         for (String permission : permissions) {
             int p = activity.checkSelfPermission(permission);
@@ -84,13 +215,21 @@ public class HomeFragment extends AbstractFragment {
             permission = split[split.length - 1];
             map.put(permission, grant);
         }
-        permissionMap.set(map);
-        if (!(deniedPermissions.isEmpty() || requested)) {
-            String[] denied = deniedPermissions.toArray(new String[0]);
-            REQUEST_CODE = this.getId() & 0xFFFF;
-            activity.requestPermissions(denied, REQUEST_CODE);
-            requested = true;
+        if (!deniedPermissions.isEmpty()) {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (requested) {
+                        return;
+                    }
+                    String[] denied = deniedPermissions.toArray(new String[0]);
+                    REQUEST_CODE = getId() & 0xFFFF;
+                    activity.requestPermissions(denied, REQUEST_CODE);
+                    requested = true;
+                }
+            });
         }
+        return map;
     }
 
     @Override
@@ -119,8 +258,7 @@ public class HomeFragment extends AbstractFragment {
 
     private void addBatteryStatus(Context context) {
         addHeader(BatteryManager.class);
-
-        battery.set(fetchBatteryStatus(context));
+        collectBatteryStatus(context);
 
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(Intent.ACTION_BATTERY_LOW);
@@ -130,11 +268,20 @@ public class HomeFragment extends AbstractFragment {
         context.registerReceiver(new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                battery.set(fetchBatteryStatus(context));
+                collectBatteryStatus(context);
             }
         }, intentFilter);
     }
 
+    private void collectBatteryStatus(final Context context) {
+        collect(battery, "Battery", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return fetchBatteryStatus(context);
+            }
+        });
+    }
+
     private Map<String, Object> fetchBatteryStatus(Context context) {
         Map<String, Object> map = new ArrayMap<>();
         IntentFilter intentFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
@@ -156,7 +303,7 @@ public class HomeFragment extends AbstractFragment {
         value = Utils.findConstant(BatteryManager.class, key, "BATTERY_HEALTH_(.*)");
         map.put("Battery Health", value);
 
-         value = getString(R.string.unknown);
+        value = context.getString(R.string.unknown);
         key = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
         if (key > 0) {
             value = Utils.findConstant(BatteryManager.class, key, "BATTERY_PLUGGED_(.*)");
@@ -174,7 +321,7 @@ public class HomeFragment extends AbstractFragment {
         map.put("Battery Voltage", (voltage / 1000f) + "V");
 
         float temperature = batteryStatus.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1) / 10f;
-        map.put("Battery Temperature", temperature + getString(R.string.sensor_unit_deg));
+        map.put("Battery Temperature", temperature + context.getString(R.string.sensor_unit_deg));
 
         value = batteryStatus.getStringExtra(BatteryManager.EXTRA_TECHNOLOGY);
         map.put("Battery Technology", value);
@@ -186,12 +333,25 @@ public class HomeFragment extends AbstractFragment {
         return map;
     }
 
-    private void addResourceDetails() {
-        Resources resources = getResources();
+    private void addResourceDetails(Context context) {
+        final Resources resources = context.getResources();
         addHeader(Configuration.class);
-        configuration.set(getConfiguration(resources.getConfiguration()));
+        collect(configuration, "Configuration", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return getConfiguration(resources.getConfiguration());
+            }
+        });
         addHeader(DisplayMetrics.class);
-        displayMetrics.set(Utils.findFields(resources.getDisplayMetrics()));
+        collect(displayMetrics, "DisplayMetrics", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                DisplayMetrics metrics = resources.getDisplayMetrics();
+                Map<String, Object> map = Utils.findFields(metrics);
+                map.put("densityBucket", Constants.DENSITY.nameOf(metrics.densityDpi));
+                return map;
+            }
+        });
     }
 
     private Map<String, Object> getConfiguration(Configuration configuration) {
@@ -231,28 +391,43 @@ public class HomeFragment extends AbstractFragment {
 
     private void addStaticData() {
         addHeader(Build.class);
-        buildMap.set(Utils.findConstants(Build.class, null, null));
+        collect(buildMap, "Build", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return Utils.findConstants(Build.class, null, null);
+            }
+        });
         addHeader(Build.VERSION.class);
-        Map<String, Object> VERSION = Utils.findConstants(Build.VERSION.class, null, null);
-        String versionCode = Utils.findConstant(Build.VERSION_CODES.class, Build.VERSION.SDK_INT, null);
-        VERSION.put("Version Code", versionCode);
-        versionMap.set(VERSION);
+        collect(versionMap, "Build.VERSION", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                Map<String, Object> VERSION = Utils.findConstants(Build.VERSION.class, null, null);
+                String versionCode = Utils.findConstant(Build.VERSION_CODES.class, Build.VERSION.SDK_INT, null);
+                VERSION.put("Version Code", versionCode);
+                return VERSION;
+            }
+        });
 
         addHeader("Environment Variables", ROOT + "java/lang/System.html#getenv()");
-        envMap.set(System.getenv());
+        collect(envMap, "Environment Variables", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return new TreeMap<>(System.getenv());
+            }
+        });
         addHeader("System Properties", ROOT + "java/lang/System.html#getProperties()");
-        sysPropMap.set(System.getProperties());
-    }
-
-    @Override
-    int getTitle() {
-        return R.string.menu_home;
+        collect(sysPropMap, "System Properties", new Collector() {
+            @Override
+            public Map<?, ?> collect() {
+                return new TreeMap<>(System.getProperties());
+            }
+        });
     }
 
-    @Override
-    int getIcon() {
-        return R.drawable.ic_home;
+    /**
+     * Loaded on first use, not with the fragment.
+     */
+    private static final class Constants {
+        static final NearestConstant DENSITY = NearestConstant.of(DisplayMetrics.class, int.class, "^DENSITY_(LOW|MEDIUM|TV|HIGH|XHIGH|XXHIGH|XXXHIGH|\\d+)$");
     }
-
-
 }
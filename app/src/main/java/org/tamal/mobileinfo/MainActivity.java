@@ -1,10 +1,13 @@
 package org.tamal.mobileinfo;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 
+import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.StringRes;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -17,21 +20,33 @@ import androidx.viewpager.widget.ViewPager;
 
 import com.google.android.material.navigation.NavigationView;
 
+import java.io.File;
+
 public class MainActivity extends AppCompatActivity
         implements NavigationView.OnNavigationItemSelectedListener, ViewPager.OnPageChangeListener {
 
     private Menu menu;
     private ViewPager viewPager;
-    private AbstractFragment[] fragments = {
-            new HomeFragment(),
-            new FontsFragment(),
-            new NetworkFragment(),
-            new SensorsFragment(),
+    private static final int CREATE_SPAN = Tracing.id("MainActivity.onCreate");
+    private static final Page[] PAGES = {
+            new Page(HomeFragment.class, R.string.menu_home, R.drawable.ic_home),
+            new Page(FontsFragment.class, R.string.menu_fonts, R.drawable.ic_text),
+            new Page(NetworkFragment.class, R.string.menu_network, R.drawable.ic_network),
+            new Page(SensorsFragment.class, R.string.menu_sensors, R.drawable.ic_sensors),
     };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        long start = Tracing.begin(CREATE_SPAN);
+        try {
+            super.onCreate(savedInstanceState);
+            create();
+        } finally {
+            Tracing.end(CREATE_SPAN, start);
+        }
+    }
+
+    private void create() {
         setContentView(R.layout.activity_main);
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -42,9 +57,9 @@ public class MainActivity extends AppCompatActivity
         DrawerLayout drawer = findViewById(R.id.drawer_layout);
         NavigationView navigationView = findViewById(R.id.nav_view);
         menu = navigationView.getMenu();
-        for (AbstractFragment fragment : fragments) {
-            MenuItem menuItem = menu.add(R.id.menu_group, fragment.hashCode(), Menu.NONE, fragment.getTitle());
-            menuItem.setIcon(fragment.getIcon());
+        for (int i = 0; i < PAGES.length; i++) {
+            MenuItem menuItem = menu.add(R.id.menu_group, Menu.FIRST + i, Menu.NONE, PAGES[i].title);
+            menuItem.setIcon(PAGES[i].icon);
             menuItem.setCheckable(true);
         }
         menu.getItem(0).setChecked(true);
@@ -55,6 +70,18 @@ public class MainActivity extends AppCompatActivity
         navigationView.setNavigationItemSelectedListener(this);
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        final File dir = getFilesDir();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Tracing.persist(dir);
+            }
+        });
+    }
+
     @Override
     public void onBackPressed() {
         DrawerLayout drawer = findViewById(R.id.drawer_layout);
@@ -89,11 +116,9 @@ public class MainActivity extends AppCompatActivity
 
     @Override
     public boolean onNavigationItemSelected(@NonNull MenuItem item) {
-        for (int i = 0; i < fragments.length; i++) {
-            if (item.getItemId() == fragments[i].hashCode()) {
-                viewPager.setCurrentItem(i);
-                break;
-            }
+        int position = item.getItemId() - Menu.FIRST;
+        if (position >= 0 && position < PAGES.length) {
+            viewPager.setCurrentItem(position);
         }
         DrawerLayout drawer = findViewById(R.id.drawer_layout);
         drawer.closeDrawer(GravityCompat.START);
@@ -115,6 +140,24 @@ public class MainActivity extends AppCompatActivity
         // Empty
     }
 
+    /**
+     * A page of the pager, its fragment is only created when the pager first needs it.
+     */
+    private static final class Page {
+
+        private final Class<? extends AbstractFragment> type;
+        @StringRes
+        private final int title;
+        @DrawableRes
+        private final int icon;
+
+        Page(Class<? extends AbstractFragment> type, @StringRes int title, @DrawableRes int icon) {
+            this.type = type;
+            this.title = title;
+            this.icon = icon;
+        }
+    }
+
     class SectionsPagerAdapter extends FragmentPagerAdapter {
 
         SectionsPagerAdapter(FragmentManager supportFragmentManager) {
@@ -123,17 +166,17 @@ public class MainActivity extends AppCompatActivity
 
         @Override
         public Fragment getItem(int position) {
-            return fragments[position];
+            return Fragment.instantiate(MainActivity.this, PAGES[position].type.getName());
         }
 
         @Override
         public CharSequence getPageTitle(int position) {
-            return getString(fragments[position].getTitle());
+            return getString(PAGES[position].title);
         }
 
         @Override
         public int getCount() {
-            return fragments.length;
+            return PAGES.length;
         }
     }
 }
@@ -8,36 +8,38 @@ import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
 import android.net.NetworkRequest;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 
+import org.tamal.mobileinfo.core.Utils;
+
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
 public class NetworkFragment extends AbstractFragment {
 
-    private static final Map<String, Integer> CAPABILITIES = Utils.findConstants(NetworkCapabilities.class, int.class, "NET_CAPABILITY_(.+)");
-    private static final Map<String, Integer> TRANSPORT = Utils.findConstants(NetworkCapabilities.class, int.class, "TRANSPORT_(.+)");
     private static final String BANDWIDTH = "Bandwidth";
     private static final String NET_TRANSPORT = "Network Transport";
     private static final String NET_CAPABILITIES = "Network Capabilities";
     private static final String NET_STATE = "Network State";
-    private ConnectivityManager connectivityManager;
+    private static final int UPDATE_SPAN = Tracing.id("NetworkFragment.updateNetworkDetails");
+    // Resolved on the main thread before the callback is registered, read on the connectivity thread
+    private volatile ConnectivityManager connectivityManager;
+    private volatile String bandwidthFormat;
     private NetworkCallback callback = new NetworkCallback();
+    private boolean registered;
     private KeyValues networkState = new KeyValues();
     private KeyValues networkInfo = new KeyValues();
     private KeyValues networkCapabilities = new KeyValues();
     private KeyValues linkProperties = new KeyValues();
 
     @Override
-    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View view = super.onCreateView(inflater, container, savedInstanceState);
+    View createView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View view = super.createView(inflater, container, savedInstanceState);
         networkState.set(Collections.singletonMap(NET_STATE, "Unavailable"));
         addHeader(NetworkInfo.class);
         networkInfo.set(null);
@@ -45,23 +47,42 @@ public class NetworkFragment extends AbstractFragment {
         networkCapabilities.set(null);
         addHeader(LinkProperties.class);
         linkProperties.set(null);
-        final Context context = getContext();
+        return view;
+    }
+
+    @Override
+    void onLoad() {
+        Context context = getContext();
         if (context == null) {
-            return view;
+            return;
         }
         connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        bandwidthFormat = context.getString(R.string.network_bandwidth);
         NetworkRequest request = new NetworkRequest.Builder().build();
         connectivityManager.registerNetworkCallback(request, callback);
-        return view;
+        registered = true;
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-         connectivityManager.unregisterNetworkCallback(callback);
+        if (registered) {
+            connectivityManager.unregisterNetworkCallback(callback);
+            registered = false;
+        }
     }
 
     private void updateNetworkDetails(Network network, String state) {
+        long start = Tracing.begin(UPDATE_SPAN);
+        try {
+            setNetworkDetails(network, state);
+        } finally {
+            Tracing.end(UPDATE_SPAN, start);
+        }
+    }
+
+    private void setNetworkDetails(Network network, String state) {
+        ConnectivityManager connectivityManager = this.connectivityManager;
         networkState.set(Collections.singletonMap(NET_STATE, state));
         if (network == null || state.equals("Lost")) {
             networkInfo.set(null);
@@ -73,16 +94,16 @@ public class NetworkFragment extends AbstractFragment {
         Map<String, String> capabilities = new TreeMap<>();
         NetworkCapabilities networkCapabilities = connectivityManager.getNetworkCapabilities(network);
         if (networkCapabilities != null) {
-            capabilities.put(BANDWIDTH, getString(R.string.network_bandwidth, networkCapabilities.getLinkUpstreamBandwidthKbps()/1024, networkCapabilities.getLinkDownstreamBandwidthKbps()/1024));
+            capabilities.put(BANDWIDTH, String.format(bandwidthFormat, networkCapabilities.getLinkUpstreamBandwidthKbps()/1024, networkCapabilities.getLinkDownstreamBandwidthKbps()/1024));
             StringBuilder transport = new StringBuilder();
-            for (Map.Entry<String, Integer> entry : TRANSPORT.entrySet()) {
+            for (Map.Entry<String, Integer> entry : Constants.TRANSPORT.entrySet()) {
                 if (networkCapabilities.hasTransport(entry.getValue())) {
                     transport.append('\n').append(entry.getKey());
                 }
             }
             capabilities.put(NET_TRANSPORT, transport.substring(1));
             StringBuilder capability = new StringBuilder();
-            for (Map.Entry<String, Integer> entry : CAPABILITIES.entrySet()) {
+            for (Map.Entry<String, Integer> entry : Constants.CAPABILITIES.entrySet()) {
                 if (networkCapabilities.hasCapability(entry.getValue())) {
                     capability.append('\n').append(entry.getKey());
                 }
@@ -131,25 +152,20 @@ public class NetworkFragment extends AbstractFragment {
             updateNetworkDetails(network, "Link Properties Changed");
         }
 
-        private void updateNetworkDetails(final Network network, final String state) {
-            Handler handler = new Handler(Looper.getMainLooper());
-            handler.post(new Runnable() {
-                public void run()
-                {
-                    NetworkFragment.this.updateNetworkDetails(network, state);
-                }
-            });
+        /**
+         * Runs on the connectivity thread, which neither touches the context nor the view: the key
+         * values coalesce their updates on the main thread.
+         */
+        private void updateNetworkDetails(Network network, String state) {
+            NetworkFragment.this.updateNetworkDetails(network, state);
         }
     }
 
-    @Override
-    int getTitle() {
-        return R.string.menu_network;
-    }
-
-    @Override
-    int getIcon() {
-        return R.drawable.ic_network;
+    /**
+     * Loaded on first use, not with the fragment.
+     */
+    private static final class Constants {
+        static final Map<String, Integer> CAPABILITIES = Utils.findConstants(NetworkCapabilities.class, int.class, "NET_CAPABILITY_(.+)");
+        static final Map<String, Integer> TRANSPORT = Utils.findConstants(NetworkCapabilities.class, int.class, "TRANSPORT_(.+)");
     }
-
 }
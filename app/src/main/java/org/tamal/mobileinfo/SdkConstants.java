@@ -0,0 +1,61 @@
+package org.tamal.mobileinfo;
+
+import android.content.res.Configuration;
+import android.hardware.Sensor;
+import android.hardware.SensorDirectChannel;
+import android.hardware.SensorManager;
+import android.net.NetworkCapabilities;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.view.View;
+
+import org.tamal.mobileinfo.core.NearestConstant;
+import org.tamal.mobileinfo.core.Utils;
+import org.tamal.mobileinfo.processor.ConstantTable;
+import org.tamal.mobileinfo.processor.ConstantTables;
+
+/**
+ * The SDK constants the fragments resolve through {@link Utils#findConstant},
+ * {@link Utils#findConstants} and {@link NearestConstant#of}. Their tables are generated at build time.
+ */
+@ConstantTables(sdk = Build.VERSION_CODES.P, value = {
+        @ConstantTable(type = BatteryManager.class, regex = "BATTERY_STATUS_(.*)"),
+        @ConstantTable(type = BatteryManager.class, regex = "BATTERY_HEALTH_(.*)"),
+        @ConstantTable(type = BatteryManager.class, regex = "BATTERY_PLUGGED_(.*)"),
+        @ConstantTable(type = View.class, regex = "LAYOUT_DIRECTION_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "HARDKEYBOARDHIDDEN_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "KEYBOARD_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "KEYBOARDHIDDEN_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "NAVIGATION_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "NAVIGATIONHIDDEN_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "ORIENTATION_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "SCREENLAYOUT_SIZE_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "SCREENLAYOUT_LONG_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "SCREENLAYOUT_LAYOUTDIR_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "SCREENLAYOUT_ROUND_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "TOUCHSCREEN_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "UI_MODE_TYPE_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "UI_MODE_NIGHT_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "COLOR_MODE_HDR_(.*)"),
+        @ConstantTable(type = Configuration.class, regex = "COLOR_MODE_WIDE_COLOR_GAMUT_(.*)"),
+        @ConstantTable(type = Build.VERSION_CODES.class),
+        @ConstantTable(type = SensorManager.class, fieldType = float.class, regex = "GRAVITY_(.+)"),
+        @ConstantTable(type = SensorManager.class, fieldType = float.class, regex = "LIGHT_(.+)"),
+        @ConstantTable(type = SensorManager.class, fieldType = float.class, regex = "MAGNETIC_FIELD_(.+)"),
+        @ConstantTable(type = DisplayMetrics.class, fieldType = int.class, regex = "^DENSITY_(LOW|MEDIUM|TV|HIGH|XHIGH|XXHIGH|XXXHIGH|\\d+)$"),
+        @ConstantTable(type = Sensor.class, regex = "TYPE_(.+)"),
+        @ConstantTable(type = Sensor.class, regex = "REPORTING_MODE_(.*)"),
+        @ConstantTable(type = SensorDirectChannel.class, regex = "RATE_(.*)"),
+        @ConstantTable(type = NetworkCapabilities.class, fieldType = int.class, regex = "NET_CAPABILITY_(.+)"),
+        @ConstantTable(type = NetworkCapabilities.class, fieldType = int.class, regex = "TRANSPORT_(.+)"),
+})
+final class SdkConstants {
+
+    private SdkConstants() {
+    }
+
+    static void install() {
+        SdkConstantsTables.install(Build.VERSION.SDK_INT);
+    }
+}
@@ -0,0 +1,122 @@
+package org.tamal.mobileinfo;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import org.tamal.mobileinfo.core.SensorDownsampler;
+import org.tamal.mobileinfo.core.SensorRingBuffer;
+
+/**
+ * Draws every value of the samples in a {@link SensorRingBuffer} as a line over time, oldest
+ * on the left. The samples are downsampled to one min/max bucket per pixel; drawing allocates
+ * nothing, the line points are kept in an array sized with the view.
+ */
+public class SensorChartView extends View {
+
+    private static final int[] COLORS = {Color.RED, Color.GREEN, Color.BLUE, Color.MAGENTA, Color.CYAN, Color.YELLOW};
+    private static final float STROKE_WIDTH = 2;
+
+    private final Paint[] paints = new Paint[COLORS.length];
+    private SensorRingBuffer buffer;
+    private SensorDownsampler downsampler;
+    // Two line segments per bucket: from the previous bucket, and between its minimum and maximum
+    private float[] points;
+    private long drawnSequence = -1;
+
+    public SensorChartView(Context context) {
+        this(context, null);
+    }
+
+    public SensorChartView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        for (int i = 0; i < paints.length; i++) {
+            paints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paints[i].setColor(COLORS[i]);
+            paints[i].setStrokeWidth(STROKE_WIDTH);
+        }
+    }
+
+    /**
+     * @param buffer the samples to draw, or {@code null} to draw nothing.
+     */
+    public void setBuffer(@Nullable SensorRingBuffer buffer) {
+        this.buffer = buffer;
+        drawnSequence = -1;
+        invalidate();
+    }
+
+    /**
+     * Redraws if samples were written since the last drawing.
+     */
+    public void refresh() {
+        if (buffer != null && buffer.sequence() != drawnSequence) {
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int width = w - getPaddingLeft() - getPaddingRight();
+        if (width > 0 && (downsampler == null || downsampler.getMaxBuckets() != width)) {
+            downsampler = new SensorDownsampler(width);
+            points = new float[width * 8];
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (buffer == null || downsampler == null) {
+            return;
+        }
+        long sequence = buffer.sequence();
+        drawnSequence = sequence;
+        int buckets = downsampler.downsample(buffer, Math.max(0, sequence - buffer.capacity()), sequence, downsampler.getMaxBuckets());
+        if (buckets == 0) {
+            return;
+        }
+        float lowest = downsampler.getLowest();
+        float highest = downsampler.getHighest();
+        if (highest - lowest < Float.MIN_NORMAL) {
+            // A flat line in the middle
+            lowest -= 1;
+            highest += 1;
+        }
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        float width = getWidth() - left - getPaddingRight();
+        float height = getHeight() - top - getPaddingBottom();
+        float xScale = buckets > 1 ? width / (buckets - 1) : 0;
+        float yScale = height / (highest - lowest);
+        int series = Math.min(downsampler.getSeries(), paints.length);
+        for (int s = 0; s < series; s++) {
+            int length = 0;
+            float x0 = left;
+            float y0 = top + (highest - downsampler.getFirst(0, s)) * yScale;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                float x = left + bucket * xScale;
+                float y1 = top + (highest - downsampler.getFirst(bucket, s)) * yScale;
+                float y2 = top + (highest - downsampler.getSecond(bucket, s)) * yScale;
+                length = addLine(length, x0, y0, x, y1);
+                length = addLine(length, x, y1, x, y2);
+                x0 = x;
+                y0 = y2;
+            }
+            canvas.drawLines(points, 0, length, paints[s]);
+        }
+    }
+
+    private int addLine(int length, float x0, float y0, float x1, float y1) {
+        points[length] = x0;
+        points[length + 1] = y0;
+        points[length + 2] = x1;
+        points[length + 3] = y1;
+        return length + 4;
+    }
+}
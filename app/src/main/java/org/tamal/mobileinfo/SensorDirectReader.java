@@ -0,0 +1,165 @@
+package org.tamal.mobileinfo;
+
+import android.annotation.TargetApi;
+import android.hardware.Sensor;
+import android.hardware.SensorDirectChannel;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.MemoryFile;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import org.tamal.mobileinfo.core.DirectReportParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Captures the sensors which support it through a {@link SensorDirectChannel} on a
+ * {@link MemoryFile}. The sensors write into the shared memory without any callback, the
+ * reader polls it on the capture thread and hands the new records to {@link SensorEngine#ingest}.
+ */
+@TargetApi(Build.VERSION_CODES.O)
+final class SensorDirectReader implements Runnable, DirectReportParser.Listener {
+
+    private static final String TAG = "SensorDirectReader";
+    private static final int RECORDS_PER_SENSOR = 256;
+    private static final int READ_RECORDS = 64;
+    private static final int POLL_MILLIS = 16;
+    /**
+     * Direct reports carry no accuracy.
+     */
+    private static final int ACCURACY_UNKNOWN = -1;
+
+    private final SensorEngine engine;
+    private final SensorManager sensorManager;
+    private final Handler handler;
+    private final List<Sensor> sensors = new ArrayList<>();
+    private final SparseIntArray tokenSlots = new SparseIntArray();
+    private final byte[] bytes = new byte[READ_RECORDS * DirectReportParser.RECORD_SIZE];
+    private final ByteBuffer window = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    private final DirectReportParser parser = new DirectReportParser();
+    private MemoryFile memory;
+    private SensorDirectChannel channel;
+    private int records;
+    private int next;
+
+    SensorDirectReader(SensorEngine engine, SensorManager sensorManager, Handler handler) {
+        this.engine = engine;
+        this.sensorManager = sensorManager;
+        this.handler = handler;
+        for (int slot = 0; slot < engine.size(); slot++) {
+            Sensor sensor = engine.getSensor(slot);
+            if (sensor.getHighestDirectReportRateLevel() > SensorDirectChannel.RATE_STOP
+                    && sensor.isDirectChannelTypeSupported(SensorDirectChannel.TYPE_MEMORY_FILE)) {
+                sensors.add(sensor);
+            }
+        }
+    }
+
+    boolean isCaptured(Sensor sensor) {
+        return channel != null && sensors.contains(sensor);
+    }
+
+    /**
+     * Opens the channel and starts polling, the sensors are then {@link #configure configured} one by one.
+     *
+     * @return false if the channel could not be opened, the sensors must then be captured otherwise.
+     */
+    boolean start() {
+        if (sensors.isEmpty()) {
+            return false;
+        }
+        records = RECORDS_PER_SENSOR * sensors.size();
+        try {
+            memory = new MemoryFile(TAG, records * DirectReportParser.RECORD_SIZE);
+            channel = sensorManager.createDirectChannel(memory);
+        } catch (IOException | RuntimeException e) {
+            // createDirectChannel throws an UncheckedIOException
+            Log.e(TAG, e.toString());
+            stop();
+            return false;
+        }
+        tokenSlots.clear();
+        parser.reset();
+        next = 0;
+        handler.post(this);
+        return true;
+    }
+
+    /**
+     * Starts or stops the reports of a {@link #isCaptured captured} sensor.
+     *
+     * @return whether the channel accepted the rate.
+     */
+    boolean configure(Sensor sensor, boolean enabled) {
+        int slot = engine.getSlot(sensor);
+        int index = tokenSlots.indexOfValue(slot);
+        if (index >= 0) {
+            tokenSlots.removeAt(index);
+        }
+        if (!enabled) {
+            return channel.configure(sensor, SensorDirectChannel.RATE_STOP) > 0;
+        }
+        int rate = Math.min(sensor.getHighestDirectReportRateLevel(), SensorDirectChannel.RATE_VERY_FAST);
+        int token = channel.configure(sensor, rate);
+        if (token > 0) {
+            tokenSlots.put(token, slot);
+        }
+        return token > 0;
+    }
+
+    void stop() {
+        handler.removeCallbacks(this);
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (memory != null) {
+            memory.close();
+            memory = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        if (memory == null) {
+            return;
+        }
+        try {
+            poll();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+        handler.postDelayed(this, POLL_MILLIS);
+    }
+
+    /**
+     * Copies the shared memory a window at a time from the last position on, up to the first
+     * record which is not new.
+     */
+    private void poll() throws IOException {
+        while (true) {
+            int count = Math.min(READ_RECORDS, records - next);
+            memory.readBytes(bytes, next * DirectReportParser.RECORD_SIZE, 0, count * DirectReportParser.RECORD_SIZE);
+            int parsed = parser.parse(window, 0, count, this);
+            next = (next + parsed) % records;
+            if (parsed < count) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onReport(int token, int type, long timestamp, float[] values) {
+        int slot = tokenSlots.get(token, -1);
+        if (slot >= 0) {
+            // Direct reports always carry 16 values, only the leading ones are meaningful
+            engine.ingest(slot, timestamp, ACCURACY_UNKNOWN, values, SensorEngine.getValueCount(type));
+        }
+    }
+}
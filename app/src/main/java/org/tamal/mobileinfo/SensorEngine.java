@@ -0,0 +1,682 @@
+package org.tamal.mobileinfo;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.tamal.mobileinfo.core.SensorBatching;
+import org.tamal.mobileinfo.core.SensorJoin;
+import org.tamal.mobileinfo.core.SensorRecorder;
+import org.tamal.mobileinfo.core.SensorRecording;
+import org.tamal.mobileinfo.core.SensorRingBuffer;
+import org.tamal.mobileinfo.core.SensorStats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Captures sensor events on a background thread at the fastest rate each sensor supports.
+ * Every sensor has a slot, its position in the list, and a {@link SensorRingBuffer} the
+ * events are written into; the UI reads from the buffers at its own pace. Events can also be
+ * recorded to a file and replayed from one through the same {@link #ingest} path.
+ * <p>
+ * In batched mode the sensors report through their hardware FIFO, so the application
+ * processor can sleep between batches, and are flushed when the capture stops. In direct mode
+ * the sensors which support it write into shared memory through a {@link SensorDirectReader}.
+ * <p>
+ * Only the sensors in the {@link #subscribe subscribed} slots are registered, the subscription
+ * can change while capturing. While started, the vibration spectra of the accelerometers and
+ * gyroscopes are analyzed by {@link SensorSpectra}, and chosen sensors can be resampled onto a
+ * common clock by a {@link SensorJoin} for export.
+ */
+final class SensorEngine {
+
+    private static final String TAG = "SensorEngine";
+    private static final int HISTORY_SECONDS = 2;
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_CAPACITY = 1024;
+    private static final int BATCH_SAMPLING_PERIOD_US = 20000;
+    private static final int FLUSH_TIMEOUT_MILLIS = 1000;
+
+    private final SensorManager sensorManager;
+    private final List<Sensor> sensors;
+    private final Map<Sensor, Integer> slots = new HashMap<>();
+    private final SensorRingBuffer[] buffers;
+    private final SensorStats[] stats;
+    private final SensorSpectra spectra;
+    // The only writer of the buffers, for the whole life of the engine
+    private final HandlerThread thread;
+    private final Handler handler;
+    private Capture capture;
+    private volatile boolean replaying;
+    // Only used on the capture thread
+    private SensorRecorder recorder;
+    // The file the recorder is renamed to once closed
+    private File recordingFile;
+    private Replay replay;
+    private SensorJoin join;
+    private boolean[] joined;
+    private boolean[] required;
+    private final Runnable[] observers;
+    private Capture registeredCapture;
+    private int subscribedFrom;
+    private int subscribedTo;
+    private final List<Capture> flushing = new ArrayList<>();
+
+    SensorEngine(SensorManager sensorManager, List<Sensor> sensors) {
+        this.sensorManager = sensorManager;
+        this.sensors = sensors;
+        buffers = new SensorRingBuffer[sensors.size()];
+        stats = new SensorStats[sensors.size()];
+        joined = new boolean[sensors.size()];
+        required = new boolean[sensors.size()];
+        observers = new Runnable[sensors.size()];
+        for (int slot = 0; slot < buffers.length; slot++) {
+            Sensor sensor = sensors.get(slot);
+            slots.put(sensor, slot);
+            int rate = sensor.getMinDelay() > 0 ? 1000000 / sensor.getMinDelay() : 0;
+            buffers[slot] = new SensorRingBuffer(Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, rate * HISTORY_SECONDS)));
+            stats[slot] = new SensorStats();
+        }
+        thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_MORE_FAVORABLE);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        spectra = new SensorSpectra(this);
+    }
+
+    int size() {
+        return buffers.length;
+    }
+
+    Sensor getSensor(int slot) {
+        return sensors.get(slot);
+    }
+
+    /**
+     * @return the slot of {@code sensor}, or -1 if it is not captured by this engine.
+     */
+    int getSlot(Sensor sensor) {
+        Integer slot = slots.get(sensor);
+        return slot == null ? -1 : slot;
+    }
+
+    SensorRingBuffer getBuffer(int slot) {
+        return buffers[slot];
+    }
+
+    SensorStats getStats(int slot) {
+        return stats[slot];
+    }
+
+    /**
+     * @see SensorSpectra#getSummary(int)
+     */
+    @Nullable
+    String getSpectrum(int slot) {
+        return spectra.getSummary(slot);
+    }
+
+    /**
+     * Captures the slots from {@code from} inclusive to {@code to} exclusive from now on,
+     * registering and unregistering the sensors which enter and leave the range.
+     */
+    void subscribe(final int from, final int to) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                subscribedFrom = from;
+                subscribedTo = to;
+                if (registeredCapture != null) {
+                    registeredCapture.update();
+                }
+            }
+        });
+    }
+
+    /**
+     * Captures the {@code slots} whether subscribed or not, such as the sources of derived
+     * sensors, replacing the previously required ones.
+     */
+    void require(int[] slots) {
+        final boolean[] newRequired = new boolean[sensors.size()];
+        for (int slot : slots) {
+            newRequired[slot] = true;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                required = newRequired;
+                if (registeredCapture != null) {
+                    registeredCapture.update();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@code observer} on the capture thread after every sample stored in {@code slot}, so
+     * that a reader of the buffer wakes up only when there is something to read. It must only
+     * hand off to its own thread. Replaces the observer of the slot; null removes it.
+     */
+    void setObserver(final int slot, @Nullable final Runnable observer) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                observers[slot] = observer;
+            }
+        });
+    }
+
+    /**
+     * Registers the subscribed streaming sensors. One-shot sensors are left to the caller.
+     *
+     * @param batched whether to let the sensors batch events in their hardware FIFO.
+     * @param direct   whether to use a direct channel for the sensors which support it, from Android O.
+     */
+    void start(boolean batched, boolean direct) {
+        if (capture != null) {
+            return;
+        }
+        final Capture started = new Capture(batched, direct);
+        capture = started;
+        spectra.start();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                started.register();
+            }
+        });
+    }
+
+    /**
+     * Unregisters the sensors and closes the recording, after a flush in batched mode.
+     */
+    void stop() {
+        if (capture == null) {
+            return;
+        }
+        final Capture stopped = capture;
+        capture = null;
+        spectra.stop();
+        // Listeners are only changed on the capture thread from here, so a finishing replay cannot re-register
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopReplay();
+                stopped.flush(recorder);
+            }
+        });
+    }
+
+    /**
+     * Stops the capture thread, the engine cannot be started again.
+     */
+    void release() {
+        final Capture stopped = capture;
+        capture = null;
+        spectra.release();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopReplay();
+                if (stopped != null) {
+                    stopped.flushing(recorder);
+                }
+                // Do not wait for the flushes, quitting drops their timeouts
+                for (Capture capture : new ArrayList<>(flushing)) {
+                    handler.removeCallbacks(capture);
+                    capture.run();
+                }
+                closeRecorder(recorder);
+            }
+        });
+        thread.quitSafely();
+    }
+
+    /**
+     * Starts writing all captured events to {@code file}, replacing it once the recording stops.
+     * The events are written to a temporary file meanwhile, created on the capture thread after
+     * the previous recording is closed: neither that recording nor a replay ever maps a file
+     * which is truncated.
+     */
+    void startRecording(final File file) {
+        final int[] types = new int[sensors.size()];
+        final String[] names = new String[sensors.size()];
+        for (int slot = 0; slot < types.length; slot++) {
+            types[slot] = sensors.get(slot).getType();
+            names[slot] = sensors.get(slot).getName();
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeRecorder(recorder);
+                try {
+                    recorder = new SensorRecorder(getTemporary(file), types, names);
+                    recordingFile = file;
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+        });
+    }
+
+    void stopRecording() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeRecorder(recorder);
+            }
+        });
+    }
+
+    private static File getTemporary(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Closes {@code closing} if it is still the current recorder, and moves it to its file.
+     */
+    private void closeRecorder(SensorRecorder closing) {
+        if (recorder == null || recorder != closing) {
+            return;
+        }
+        try {
+            recorder.close();
+            // A replay of the replaced file keeps reading it
+            File temporary = getTemporary(recordingFile);
+            if (!temporary.renameTo(recordingFile)) {
+                Log.w(TAG, "Cannot rename " + temporary);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+        recorder = null;
+        recordingFile = null;
+    }
+
+    /**
+     * Resamples the sensors in {@code slots} onto a common clock from now on, replacing the
+     * previous join. Joined sensors are captured whether subscribed or not.
+     *
+     * @param period   the interval between rows in nanoseconds.
+     * @param capacity the number of rows kept.
+     * @see SensorJoin
+     */
+    void startJoin(int[] slots, long period, int capacity) {
+        SensorRingBuffer[] inputs = new SensorRingBuffer[slots.length];
+        int[] widths = new int[slots.length];
+        boolean[] rotations = new boolean[slots.length];
+        final boolean[] newJoined = new boolean[sensors.size()];
+        for (int i = 0; i < slots.length; i++) {
+            int type = sensors.get(slots[i]).getType();
+            inputs[i] = buffers[slots[i]];
+            rotations[i] = isRotationVector(type);
+            widths[i] = rotations[i] ? 4 : getValueCount(type);
+            newJoined[slots[i]] = true;
+        }
+        final SensorJoin newJoin = new SensorJoin(inputs, widths, rotations, period, capacity);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                join = newJoin;
+                joined = newJoined;
+                if (registeredCapture != null) {
+                    registeredCapture.update();
+                }
+            }
+        });
+    }
+
+    void stopJoin() {
+        final boolean[] none = new boolean[sensors.size()];
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                join = null;
+                joined = none;
+                if (registeredCapture != null) {
+                    registeredCapture.update();
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the rows kept by the join to {@code file} as CSV, replacing it. The rows are copied
+     * on the capture thread and written on a background thread, off the sensor events.
+     *
+     * @param names the header of each column.
+     */
+    void exportJoin(final File file, final String[] names) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (join == null) {
+                    return;
+                }
+                final SensorJoin.Snapshot rows = join.snapshot();
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                            rows.writeCsv(writer, names);
+                        } catch (IOException e) {
+                            Log.e(TAG, e.toString());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Feeds {@code recording} to the buffers at its original pace instead of the live sensors.
+     * Recorded sensors are matched by type and name, the timestamps are moved to the present.
+     * Requires a started engine.
+     */
+    void replay(final SensorRecording recording) {
+        final Capture paused = capture;
+        if (paused == null) {
+            return;
+        }
+        replaying = true;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                paused.unregister();
+                stopReplay();
+                replay = new Replay(recording, paused);
+                replaying = true;
+                replay.run();
+            }
+        });
+    }
+
+    private void stopReplay() {
+        if (replay != null) {
+            handler.removeCallbacks(replay);
+            replay = null;
+        }
+        replaying = false;
+    }
+
+    /**
+     * @return whether a recording is being replayed, from any thread.
+     */
+    boolean isReplaying() {
+        return replaying;
+    }
+
+    /**
+     * Stores a sample of the sensor in {@code slot}. Only ever called on the capture thread.
+     */
+    void ingest(int slot, long timestamp, int accuracy, float[] values, int count) {
+        stats[slot].record(timestamp, SystemClock.elapsedRealtimeNanos());
+        buffers[slot].write(timestamp, accuracy, values, count);
+        if (observers[slot] != null) {
+            observers[slot].run();
+        }
+        if (joined[slot] && join != null) {
+            join.advance();
+        }
+        if (recorder != null) {
+            try {
+                recorder.write(slot, timestamp, accuracy, values, count);
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+                closeRecorder(recorder);
+            }
+        }
+    }
+
+    /**
+     * @return the number of meaningful values of a sensor type, or {@link SensorRingBuffer#MAX_VALUES} if unknown.
+     */
+    static int getValueCount(int type) {
+        switch (type) {
+            case Sensor.TYPE_LIGHT:
+            case Sensor.TYPE_PRESSURE:
+            case Sensor.TYPE_PROXIMITY:
+            case Sensor.TYPE_RELATIVE_HUMIDITY:
+            case Sensor.TYPE_AMBIENT_TEMPERATURE:
+            case Sensor.TYPE_STEP_COUNTER:
+                return 1;
+            case Sensor.TYPE_ACCELEROMETER:
+            case Sensor.TYPE_GYROSCOPE:
+            case Sensor.TYPE_MAGNETIC_FIELD:
+            case Sensor.TYPE_GRAVITY:
+            case Sensor.TYPE_LINEAR_ACCELERATION:
+                return 3;
+            case Sensor.TYPE_GAME_ROTATION_VECTOR:
+                return 4;
+            case Sensor.TYPE_ROTATION_VECTOR:
+            case Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR:
+                return 5;
+            case Sensor.TYPE_ACCELEROMETER_UNCALIBRATED:
+            case Sensor.TYPE_GYROSCOPE_UNCALIBRATED:
+            case Sensor.TYPE_MAGNETIC_FIELD_UNCALIBRATED:
+                return 6;
+        }
+        return SensorRingBuffer.MAX_VALUES;
+    }
+
+    static boolean isRotationVector(int type) {
+        return type == Sensor.TYPE_ROTATION_VECTOR || type == Sensor.TYPE_GAME_ROTATION_VECTOR
+                || type == Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR;
+    }
+
+    /**
+     * The listener of one {@link #start}, so that a stopping capture waiting for its flush
+     * never unregisters the sensors of the next one.
+     */
+    private final class Capture implements SensorEventListener2, Runnable {
+
+        private final boolean batched;
+        private final SensorDirectReader directReader;
+        private final boolean[] capturing = new boolean[sensors.size()];
+        private boolean direct;
+        private int registered;
+        private int pendingFlushes;
+        private SensorRecorder closing;
+
+        Capture(boolean batched, boolean direct) {
+            this.batched = batched;
+            boolean supported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+            directReader = direct && supported ? new SensorDirectReader(SensorEngine.this, sensorManager, handler) : null;
+        }
+
+        void register() {
+            registered = 0;
+            direct = directReader != null && directReader.start();
+            registeredCapture = this;
+            update();
+        }
+
+        /**
+         * Starts and stops the sensors entering and leaving the subscribed slots.
+         */
+        void update() {
+            for (int slot = 0; slot < capturing.length; slot++) {
+                boolean subscribed = slot >= subscribedFrom && slot < subscribedTo || joined[slot] || required[slot];
+                if (subscribed != capturing[slot]) {
+                    if (subscribed) {
+                        stats[slot].restart();
+                    }
+                    capturing[slot] = subscribed && start(sensors.get(slot));
+                    if (!subscribed) {
+                        stop(sensors.get(slot));
+                    }
+                }
+            }
+        }
+
+        private boolean start(Sensor sensor) {
+            if (direct && directReader.isCaptured(sensor)) {
+                return directReader.configure(sensor, true);
+            }
+            switch (sensor.getReportingMode()) {
+                case Sensor.REPORTING_MODE_CONTINUOUS:
+                case Sensor.REPORTING_MODE_ON_CHANGE:
+                case Sensor.REPORTING_MODE_SPECIAL_TRIGGER:
+                    int samplingPeriodUs = Math.max(sensor.getMinDelay(), 0);
+                    int maxReportLatencyUs = 0;
+                    if (batched) {
+                        samplingPeriodUs = Math.max(samplingPeriodUs, BATCH_SAMPLING_PERIOD_US);
+                        maxReportLatencyUs = SensorBatching.maxReportLatencyUs(sensor.getFifoReservedEventCount(),
+                                sensor.getFifoMaxEventCount(), samplingPeriodUs);
+                    }
+                    if (sensorManager.registerListener(this, sensor, samplingPeriodUs, maxReportLatencyUs, handler)) {
+                        registered++;
+                        return true;
+                    }
+            }
+            return false;
+        }
+
+        private void stop(Sensor sensor) {
+            if (direct && directReader.isCaptured(sensor)) {
+                directReader.configure(sensor, false);
+            } else {
+                sensorManager.unregisterListener(this, sensor);
+                registered--;
+            }
+        }
+
+        /**
+         * Asks the FIFOs for their pending events and finishes once all are delivered, or after a timeout.
+         */
+        void flush(SensorRecorder recorder) {
+            if (batched && registered > 0 && sensorManager.flush(this)) {
+                flushing(recorder);
+                pendingFlushes = registered;
+                handler.postDelayed(this, FLUSH_TIMEOUT_MILLIS);
+            } else {
+                closing = recorder;
+                run();
+            }
+        }
+
+        void flushing(SensorRecorder recorder) {
+            closing = recorder;
+            flushing.add(this);
+        }
+
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+            if (pendingFlushes > 0 && --pendingFlushes == 0) {
+                handler.removeCallbacks(this);
+                run();
+            }
+        }
+
+        /**
+         * Finishes the capture.
+         */
+        @Override
+        public void run() {
+            pendingFlushes = 0;
+            flushing.remove(this);
+            unregister();
+            closeRecorder(closing);
+            closing = null;
+        }
+
+        void unregister() {
+            if (registeredCapture == this) {
+                registeredCapture = null;
+            }
+            sensorManager.unregisterListener(this);
+            if (directReader != null) {
+                directReader.stop();
+            }
+            direct = false;
+            registered = 0;
+            Arrays.fill(capturing, false);
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            int slot = getSlot(event.sensor);
+            if (slot >= 0) {
+                ingest(slot, event.timestamp, event.accuracy, event.values, event.values.length);
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+        }
+    }
+
+    private final class Replay implements Runnable {
+
+        private final SensorRecording recording;
+        private final Capture paused;
+        private final int[] slots;
+        private final float[] values = new float[SensorRingBuffer.MAX_VALUES];
+        private final long offset;
+        private boolean hasNext;
+
+        Replay(SensorRecording recording, Capture paused) {
+            this.recording = recording;
+            this.paused = paused;
+            slots = new int[recording.getSensorCount()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = -1;
+                for (int slot = 0; slot < sensors.size(); slot++) {
+                    Sensor sensor = sensors.get(slot);
+                    if (sensor.getType() == recording.getType(i) && sensor.getName().equals(recording.getName(i))) {
+                        slots[i] = slot;
+                        // The recording does not follow the live events
+                        stats[slot].restart();
+                        break;
+                    }
+                }
+            }
+            recording.rewind();
+            hasNext = recording.next();
+            offset = hasNext ? SystemClock.elapsedRealtimeNanos() - recording.getTimestamp() : 0;
+        }
+
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtimeNanos();
+            for (; hasNext; hasNext = recording.next()) {
+                long timestamp = recording.getTimestamp() + offset;
+                if (timestamp > now) {
+                    handler.postDelayed(this, (timestamp - now) / 1000000);
+                    return;
+                }
+                int slot = recording.getSlot();
+                if (slot < slots.length && slots[slot] >= 0) {
+                    int count = recording.getValues(values);
+                    ingest(slots[slot], timestamp, recording.getAccuracy(), values, count);
+                }
+            }
+            replay = null;
+            replaying = false;
+            // A stopped capture removes the replay first, so the paused one is still current
+            paused.register();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.tamal.mobileinfo;
+
+import android.hardware.Sensor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import androidx.annotation.Nullable;
+
+import org.tamal.mobileinfo.core.SensorRingBuffer;
+import org.tamal.mobileinfo.core.SpectrumAnalyzer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Analyzes the vibration spectrum of the accelerometers and gyroscopes of a
+ * {@link SensorEngine} on a background thread, reading their ring buffers like the UI does.
+ * The latest summary of each sensor can be read from any thread.
+ */
+final class SensorSpectra implements Runnable {
+
+    private static final String TAG = "SensorSpectra";
+    private static final int INTERVAL_MILLIS = 500;
+    private static final int MAX_SIZE = 256;
+
+    private final SensorEngine engine;
+    private final SpectrumAnalyzer[] analyzers;
+    private final long[] analyzed;
+    private final AtomicReferenceArray<String> summaries;
+    private final StringBuilder summary = new StringBuilder(128);
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    SensorSpectra(SensorEngine engine) {
+        this.engine = engine;
+        analyzers = new SpectrumAnalyzer[engine.size()];
+        analyzed = new long[engine.size()];
+        summaries = new AtomicReferenceArray<>(engine.size());
+        for (int slot = 0; slot < analyzers.length; slot++) {
+            int type = engine.getSensor(slot).getType();
+            if (type == Sensor.TYPE_ACCELEROMETER || type == Sensor.TYPE_GYROSCOPE) {
+                // Half the buffer, so the writer does not overwrite the samples while they are read
+                analyzers[slot] = new SpectrumAnalyzer(Math.min(MAX_SIZE, engine.getBuffer(slot).capacity() / 2));
+            }
+        }
+        thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    void start() {
+        handler.removeCallbacks(this);
+        handler.post(this);
+    }
+
+    void stop() {
+        handler.removeCallbacks(this);
+    }
+
+    void release() {
+        stop();
+        thread.quitSafely();
+    }
+
+    /**
+     * @return the peaks and band energies of the sensor in {@code slot}, or {@code null} if
+     * it is not analyzed or has not delivered enough samples yet.
+     */
+    @Nullable
+    String getSummary(int slot) {
+        return summaries.get(slot);
+    }
+
+    @Override
+    public void run() {
+        for (int slot = 0; slot < analyzers.length; slot++) {
+            SpectrumAnalyzer analyzer = analyzers[slot];
+            if (analyzer == null) {
+                continue;
+            }
+            SensorRingBuffer buffer = engine.getBuffer(slot);
+            long sequence = buffer.sequence();
+            if (sequence != analyzed[slot] && analyzer.analyze(buffer, sequence)) {
+                analyzed[slot] = sequence;
+                summary.setLength(0);
+                summaries.set(slot, analyzer.appendSummary(summary).toString());
+            }
+        }
+        handler.postDelayed(this, INTERVAL_MILLIS);
+    }
+}
@@ -2,52 +2,105 @@ package org.tamal.mobileinfo;
 
 import android.app.Activity;
 import android.content.Context;
-import android.graphics.Typeface;
+import android.content.DialogInterface;
 import android.hardware.Sensor;
 import android.hardware.SensorDirectChannel;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.hardware.TriggerEvent;
 import android.hardware.TriggerEventListener;
 import android.os.Build;
 import android.os.Bundle;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import org.tamal.mobileinfo.core.LogHistogram;
+import org.tamal.mobileinfo.core.NearestConstant;
+import org.tamal.mobileinfo.core.SensorFormat;
+import org.tamal.mobileinfo.core.SensorRecording;
+import org.tamal.mobileinfo.core.SensorRingBuffer;
+import org.tamal.mobileinfo.core.SensorStats;
+import org.tamal.mobileinfo.core.Utils;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 
-public class SensorsFragment extends AbstractFragment implements SensorEventListener {
+public class SensorsFragment extends AbstractFragment {
 
     private static final int DELAY_MILLIS = 500;
-    private static final Map<String, Float> GRAVITY = Utils.findConstants(SensorManager.class, float.class, "GRAVITY_(.+)");
-    private static final Map<String, Float> LIGHT = Utils.findConstants(SensorManager.class, float.class, "LIGHT_(.+)");
+    private static final String RECORDING = "sensors.rec";
+    private static final String EXPORT = "sensors.csv";
+    private static final long JOIN_PERIOD_NANOS = 10000000;
+    private static final int JOIN_CAPACITY = 8192;
+    private static final int[] JOIN_DEFAULT_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+            Sensor.TYPE_MAGNETIC_FIELD, Sensor.TYPE_ROTATION_VECTOR};
+    /**
+     * Rows above and below the visible ones whose sensors are captured too, so they already
+     * show a sample when scrolled in.
+     */
+    private static final int PREFETCH_ROWS = 2;
+    private static final Object PAYLOAD_SAMPLE = new Object();
+    private static final String[] AXES = {"x", "y", "z", "w"};
 
     private SensorManager sensorManager;
     private List<Sensor> sensors;
+    private SensorEngine engine;
+    private DerivedSensors derived;
+    private boolean derivedShown;
     private TriggerListener triggerListener = new TriggerListener();
-    private Map<Sensor, Long> sensorUpdateMap = new HashMap<>();
-    private Map<Sensor, TextView> sensorValuesMap = new HashMap<>();
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            showSamples(frameTimeNanos / 1000000);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+    private long[] lastUpdated;
+    private SensorRow[] sensorRows;
+    private RecyclerView recyclerView;
+    private LinearLayoutManager layoutManager;
+    private SensorAdapter sensorAdapter;
+    private int subscribedFrom;
+    private int subscribedTo;
+    private String near;
+    private String far;
+    private boolean capturing;
+    private boolean recording;
+    private boolean batched;
+    private boolean direct;
+    private String[] joinColumns;
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
 
     @Override
-    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        ViewGroup rootView = (ViewGroup) inflater.inflate(R.layout.nested_scroll_view, container, false);
+    View createView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        recyclerView = (RecyclerView) inflater.inflate(R.layout.recycler_view, container, false);
         Activity activity = getActivity();
         if (activity == null) {
-            return rootView;
+            return recyclerView;
         }
         sensorManager = (SensorManager) activity.getSystemService(Context.SENSOR_SERVICE);
         sensors = new ArrayList<>(sensorManager.getSensorList(Sensor.TYPE_ALL));
@@ -57,33 +110,84 @@ public class SensorsFragment extends AbstractFragment implements SensorEventList
                 return s1.getStringType().compareTo(s2.getStringType());
             }
         });
-        LinearLayout layout = rootView.findViewById(R.id.linear_layout);
-        ViewGroup sensorDetails = (ViewGroup) inflater.inflate(R.layout.sensor_details, rootView, false);
-        for (Sensor sensor : sensors) {
-            LinearLayout linearLayout = new LinearLayout(getContext());
-            linearLayout.setOrientation(LinearLayout.VERTICAL);
-            TextView sensorNameView = new TextView(getContext());
-            sensorNameView.setTypeface(Typeface.DEFAULT_BOLD);
-            sensorNameView.setText(sensor.getName());
-            linearLayout.addView(sensorNameView);
-            TextView sensorValueView = new TextView(getContext());
-            linearLayout.addView(sensorValueView);
-            linearLayout.setOnClickListener(new SensorDetailsClickListener(sensor, sensorDetails));
-            layout.addView(linearLayout);
-            sensorValuesMap.put(sensor, sensorValueView);
-        }
-        return rootView;
+        ViewGroup sensorDetails = (ViewGroup) inflater.inflate(R.layout.sensor_details, recyclerView, false);
+        engine = new SensorEngine(sensorManager, sensors);
+        derived = new DerivedSensors(engine, getResources());
+        // The derived sensors follow the hardware ones
+        lastUpdated = new long[sensors.size() + derived.size()];
+        sensorRows = new SensorRow[sensors.size() + derived.size()];
+        near = getString(R.string.sensor_value_near);
+        far = getString(R.string.sensor_value_far);
+        for (int slot = 0; slot < sensors.size(); slot++) {
+            Sensor sensor = sensors.get(slot);
+            sensorRows[slot] = new SensorRow(sensor, sensor.getName(), sensor.getType(),
+                    new SensorDetailsClickListener(sensor, sensorDetails), getLayout(sensor.getType()), getUnit(sensor.getType()));
+        }
+        for (int i = 0; i < derived.size(); i++) {
+            sensorRows[sensors.size() + i] = getDerivedRow(derived.getType(i));
+        }
+        derivedShown = false;
+        layoutManager = new LinearLayoutManager(getContext());
+        sensorAdapter = new SensorAdapter();
+        subscribedFrom = 0;
+        subscribedTo = 0;
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setAdapter(sensorAdapter);
+        // The rows change twice a second, animating each change is wasted work
+        recyclerView.setItemAnimator(null);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // Also called after a layout which changed the visible rows
+                subscribeVisibleRows();
+            }
+        });
+        return recyclerView;
+    }
+
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        // The pages next to the current one are resumed too, only the current one captures
+        if (!isResumed()) {
+            return;
+        }
+        if (isVisibleToUser) {
+            startCapture();
+        } else {
+            stopCapture();
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
+        if (getUserVisibleHint()) {
+            startCapture();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        stopCapture();
+    }
+
+    private void startCapture() {
+        if (capturing || engine == null) {
+            return;
+        }
+        capturing = true;
+        engine.start(batched, direct);
+        showDerived();
+        Choreographer.getInstance().postFrameCallback(frameCallback);
         for (Sensor sensor : sensors) {
             switch (sensor.getReportingMode()) {
                 case Sensor.REPORTING_MODE_CONTINUOUS:
                 case Sensor.REPORTING_MODE_ON_CHANGE:
                 case Sensor.REPORTING_MODE_SPECIAL_TRIGGER:
-                    sensorManager.registerListener(this, sensor, 1000 * DELAY_MILLIS);
+                    // Captured by the engine
                     break;
                 case Sensor.REPORTING_MODE_ONE_SHOT:
                     sensorManager.requestTriggerSensor(triggerListener, sensor);
@@ -94,15 +198,22 @@ public class SensorsFragment extends AbstractFragment implements SensorEventList
         }
     }
 
-    @Override
-    public void onPause() {
-        super.onPause();
+    private void stopCapture() {
+        if (!capturing) {
+            return;
+        }
+        capturing = false;
+        // Stopping the engine closes the recording
+        recording = false;
+        engine.stop();
+        showDerived();
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
         for (Sensor sensor : sensors) {
             switch (sensor.getReportingMode()) {
                 case Sensor.REPORTING_MODE_CONTINUOUS:
                 case Sensor.REPORTING_MODE_ON_CHANGE:
                 case Sensor.REPORTING_MODE_SPECIAL_TRIGGER:
-                    sensorManager.unregisterListener(this, sensor);
+                    // Captured by the engine
                     break;
                 case Sensor.REPORTING_MODE_ONE_SHOT:
                     sensorManager.cancelTriggerSensor(triggerListener, sensor);
@@ -114,94 +225,331 @@ public class SensorsFragment extends AbstractFragment implements SensorEventList
     }
 
     @Override
-    @SuppressWarnings("deprecation")
-    public void onSensorChanged(SensorEvent event) {
-        Sensor sensor = event.sensor;
-        Long lastUpdated = sensorUpdateMap.get(sensor);
-        long now = System.currentTimeMillis();
-        if (lastUpdated != null && now - lastUpdated < DELAY_MILLIS) {
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (engine != null) {
+            derived.release();
+            engine.release();
+        }
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.sensors, menu);
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        MenuItem item = menu.findItem(R.id.action_record);
+        if (item != null) {
+            item.setChecked(recording);
+            // Recording replaces the file being replayed once done
+            item.setEnabled(recording || engine == null || !engine.isReplaying());
+            menu.findItem(R.id.action_batched).setChecked(batched);
+            menu.findItem(R.id.action_direct).setChecked(direct);
+            menu.findItem(R.id.action_direct).setVisible(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O);
+            // Replaying reads the file being recorded to
+            menu.findItem(R.id.action_replay).setEnabled(!recording);
+            menu.findItem(R.id.action_join).setChecked(joinColumns != null);
+            menu.findItem(R.id.action_export).setEnabled(joinColumns != null);
+        }
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        Context context = getContext();
+        if (context == null || engine == null) {
+            return super.onOptionsItemSelected(item);
+        }
+        File dir = context.getExternalFilesDir(null);
+        File file = new File(dir == null ? context.getFilesDir() : dir, RECORDING);
+        try {
+            switch (item.getItemId()) {
+                case R.id.action_record:
+                    if (recording) {
+                        engine.stopRecording();
+                        Toast.makeText(context, getString(R.string.sensor_recording_saved, file), Toast.LENGTH_LONG).show();
+                    } else {
+                        engine.startRecording(file);
+                    }
+                    recording = !recording;
+                    item.setChecked(recording);
+                    return true;
+                case R.id.action_batched:
+                case R.id.action_direct:
+                    if (item.getItemId() == R.id.action_batched) {
+                        batched = !batched;
+                    } else {
+                        direct = !direct;
+                    }
+                    item.setChecked(!item.isChecked());
+                    if (capturing) {
+                        // Restarting the capture ends the recording
+                        recording = false;
+                        engine.stop();
+                        engine.start(batched, direct);
+                    }
+                    return true;
+                case R.id.action_join:
+                    if (joinColumns == null) {
+                        chooseJoin(context);
+                    } else {
+                        engine.stopJoin();
+                        joinColumns = null;
+                    }
+                    return true;
+                case R.id.action_export:
+                    File csv = new File(file.getParentFile(), EXPORT);
+                    engine.exportJoin(csv, joinColumns);
+                    Toast.makeText(context, getString(R.string.sensor_exported, csv), Toast.LENGTH_LONG).show();
+                    return true;
+                case R.id.action_replay:
+                    if (!file.exists()) {
+                        Toast.makeText(context, getString(R.string.sensor_recording_missing, file), Toast.LENGTH_LONG).show();
+                    } else {
+                        engine.replay(SensorRecording.open(file));
+                    }
+                    return true;
+            }
+        } catch (IOException e) {
+            Toast.makeText(context, e.toString(), Toast.LENGTH_SHORT).show();
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Lets the user pick the continuous sensors to join, the first accelerometer, gyroscope,
+     * magnetometer and rotation vector are picked by default. On-change sensors are left out,
+     * a sensor which does not report holds the join back.
+     */
+    private void chooseJoin(Context context) {
+        final List<Integer> choices = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int slot = 0; slot < sensors.size(); slot++) {
+            if (sensors.get(slot).getReportingMode() == Sensor.REPORTING_MODE_CONTINUOUS) {
+                choices.add(slot);
+                names.add(sensors.get(slot).getName());
+            }
+        }
+        final boolean[] checked = new boolean[choices.size()];
+        for (int type : JOIN_DEFAULT_TYPES) {
+            for (int i = 0; i < choices.size(); i++) {
+                if (sensors.get(choices.get(i)).getType() == type) {
+                    checked[i] = true;
+                    break;
+                }
+            }
+        }
+        new AlertDialog.Builder(context)
+                .setTitle(R.string.sensor_join)
+                .setMultiChoiceItems(names.toArray(new String[0]), checked, new DialogInterface.OnMultiChoiceClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        checked[which] = isChecked;
+                    }
+                })
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        List<Integer> slots = new ArrayList<>();
+                        for (int i = 0; i < checked.length; i++) {
+                            if (checked[i]) {
+                                slots.add(choices.get(i));
+                            }
+                        }
+                        startJoin(slots);
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void startJoin(List<Integer> slots) {
+        if (slots.isEmpty() || engine == null) {
+            return;
+        }
+        int[] joined = new int[slots.size()];
+        List<String> columns = new ArrayList<>();
+        Set<String> prefixes = new HashSet<>();
+        for (int i = 0; i < joined.length; i++) {
+            joined[i] = slots.get(i);
+            int type = sensors.get(joined[i]).getType();
+            String prefix = Utils.findConstant(Sensor.class, type, "TYPE_(.+)").toLowerCase(Locale.ROOT);
+            if (!prefixes.add(prefix)) {
+                // A second sensor of the type, such as a wake-up one
+                prefix += "_" + joined[i];
+            }
+            int width = SensorEngine.isRotationVector(type) ? 4 : SensorEngine.getValueCount(type);
+            for (int v = 0; v < width; v++) {
+                columns.add(prefix + '_' + (v < AXES.length ? AXES[v] : String.valueOf(v)));
+            }
+        }
+        engine.startJoin(joined, JOIN_PERIOD_NANOS, JOIN_CAPACITY);
+        joinColumns = columns.toArray(new String[0]);
+    }
+
+    /**
+     * Captures the sensors of the visible rows and of {@link #PREFETCH_ROWS} on either side.
+     */
+    private void subscribeVisibleRows() {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int from = Math.max(0, first - PREFETCH_ROWS);
+        int to = Math.min(sensorRows.length, layoutManager.findLastVisibleItemPosition() + 1 + PREFETCH_ROWS);
+        if (from != subscribedFrom || to != subscribedTo) {
+            subscribedFrom = from;
+            subscribedTo = to;
+            engine.subscribe(from, to);
+            showDerived();
+        }
+    }
+
+    /**
+     * Derives the virtual sensors while their rows are near the visible ones, capturing the
+     * hardware sensors they are derived from.
+     */
+    private void showDerived() {
+        boolean shown = capturing && subscribedTo > engine.size();
+        if (shown == derivedShown) {
+            return;
+        }
+        derivedShown = shown;
+        if (shown) {
+            engine.require(derived.getSources());
+            derived.start();
+        } else {
+            derived.stop();
+            engine.require(new int[0]);
+        }
+    }
+
+    private SensorRow getDerivedRow(int type) {
+        switch (type) {
+            case DerivedSensors.ORIENTATION:
+                return new SensorRow(null, getString(R.string.sensor_derived_orientation), 0, null,
+                        SensorFormat.ZXY, getString(R.string.sensor_unit_deg));
+            case DerivedSensors.TILT:
+                return new SensorRow(null, getString(R.string.sensor_derived_tilt), 0, null,
+                        SensorFormat.VALUE, getString(R.string.sensor_unit_deg));
+            case DerivedSensors.LINEAR_ACCELERATION:
+                return new SensorRow(null, getString(R.string.sensor_derived_linear_acceleration), 0, null,
+                        SensorFormat.XYZ, getString(R.string.sensor_unit_ms2));
+            default:
+                return new SensorRow(null, getString(R.string.sensor_derived_heading), 0, null,
+                        SensorFormat.VALUE, getString(R.string.sensor_unit_deg));
+        }
+    }
+
+    private SensorRingBuffer getBuffer(int position) {
+        return position < engine.size() ? engine.getBuffer(position) : derived.getBuffer(position - engine.size());
+    }
+
+    /**
+     * Shows the newest sample of each visible sensor, at most once per {@link #DELAY_MILLIS},
+     * and redraws the visible charts every frame.
+     */
+    private void showSamples(long now) {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
             return;
         }
-        sensorUpdateMap.put(sensor, now);
-        String unit = getUnit(sensor.getType());
-        String value;
-        float[] v = event.values;
-        float magnitude;
-        switch (sensor.getType()) {
+        int last = layoutManager.findLastVisibleItemPosition();
+        for (int slot = first; slot <= last; slot++) {
+            SensorRow row = sensorRows[slot];
+            if (row.expanded) {
+                SensorHolder holder = (SensorHolder) recyclerView.findViewHolderForAdapterPosition(slot);
+                if (holder != null) {
+                    holder.chartView.refresh();
+                }
+            }
+            SensorRingBuffer buffer = getBuffer(slot);
+            long sequence = buffer.sequence();
+            if (sequence == row.shownSequence || now - lastUpdated[slot] < DELAY_MILLIS) {
+                continue;
+            }
+            int count = buffer.readLatest(row.sample);
+            if (count < 0) {
+                continue;
+            }
+            lastUpdated[slot] = now;
+            row.shownSequence = sequence;
+            showSample(row, row.sample, count);
+            if (slot >= engine.size()) {
+                derived.appendAccuracy(slot - engine.size(), row.stats.clear());
+            } else {
+                StringBuilder stats = engine.getStats(slot).appendSummary(row.stats.clear());
+                String spectrum = engine.getSpectrum(slot);
+                if (spectrum != null) {
+                    stats.append('\n').append(spectrum);
+                }
+            }
+            sensorAdapter.notifyItemChanged(slot, PAYLOAD_SAMPLE);
+        }
+    }
+
+    private void showSample(SensorRow row, float[] v, int count) {
+        StringBuilder sb = row.value.clear();
+        switch (row.type) {
             case Sensor.TYPE_ACCELEROMETER:
             case Sensor.TYPE_ACCELEROMETER_UNCALIBRATED:
             case Sensor.TYPE_LINEAR_ACCELERATION:
             case Sensor.TYPE_GRAVITY:
-                magnitude = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
-                value = getString(R.string.sensor_values_xyz_unit, v[0], v[1], v[2], unit);
-                value += " (" + findNearest(GRAVITY, magnitude) + ")";
+                SensorFormat.append(sb, row.layout, v, count, row.unit);
+                sb.append(" (").append(Constants.GRAVITY.nameOf(magnitude(v))).append(')');
                 break;
             case Sensor.TYPE_MAGNETIC_FIELD:
             case Sensor.TYPE_MAGNETIC_FIELD_UNCALIBRATED:
-                value = getString(R.string.sensor_values_xyz_unit, v[0], v[1], v[2], unit);
-                break;
-            case Sensor.TYPE_GYROSCOPE:
-                value = getString(R.string.sensor_values_xyz_unit, v[0], v[1], v[2], unit);
-                break;
-            case Sensor.TYPE_GYROSCOPE_UNCALIBRATED:
-                value = getString(R.string.sensor_values_gyroscope_uncalibrated, v[0], v[1], v[2], v[3], v[4], v[5]);
-                break;
-            case Sensor.TYPE_ORIENTATION:
-                value = getString(R.string.sensor_values_xyz_unit, v[2], v[0], v[1], unit);
+                SensorFormat.append(sb, row.layout, v, count, row.unit);
+                sb.append(" (").append(Constants.MAGNETIC_FIELD.nameOf(magnitude(v))).append(')');
                 break;
             case Sensor.TYPE_PROXIMITY:
-                if (event.values[0] == 0) {
-                    value = getString(R.string.sensor_value_near);
-                } else if (event.values[0] == sensor.getMaximumRange()) {
-                    value = getString(R.string.sensor_value_far);
+                if (v[0] == 0) {
+                    sb.append(near);
+                } else if (v[0] == row.sensor.getMaximumRange()) {
+                    sb.append(far);
                 } else {
-                    value = getString(R.string.sensor_value_unit, event.values[0], unit);
+                    SensorFormat.append(sb, row.layout, v, count, row.unit);
                 }
                 break;
             case Sensor.TYPE_LIGHT:
-                value = getString(R.string.sensor_value_unit, event.values[0], unit);
-                value += " (" + findNearest(LIGHT, event.values[0]) + ")";
-                break;
-            case Sensor.TYPE_STEP_COUNTER:
-                value = getString(R.string.sensor_value_unit, event.values[0], unit);
-                break;
-            case Sensor.TYPE_ROTATION_VECTOR:
-            case Sensor.TYPE_GAME_ROTATION_VECTOR:
-                value = getString(R.string.sensor_values_rotation, v[0], v[1], v[2], v[3]);
+                SensorFormat.append(sb, row.layout, v, count, row.unit);
+                sb.append(" (").append(Constants.LIGHT.nameOf(v[0])).append(')');
                 break;
             default:
-                StringBuilder sb = new StringBuilder();
-                for (float val : v) {
-                    sb.append(String.format(Locale.getDefault(), ", %+.2f", val));
-                }
-                value = sb.substring(1);
-        }
-        TextView valueView = sensorValuesMap.get(sensor);
-        if (valueView != null) {
-            valueView.setText(value);
+                SensorFormat.append(sb, row.layout, v, count, row.unit);
         }
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-
+    private static float magnitude(float[] v) {
+        return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
     }
 
-    private static String findNearest(Map<String, Float> map, float value) {
-        float absValue = Math.abs(value);
-        String name = null;
-        float minDelta = Float.MAX_VALUE;
-        for (Map.Entry<String, Float> entry : map.entrySet()) {
-            float delta = Math.abs(entry.getValue() - absValue);
-            if (delta < minDelta) {
-                minDelta = delta;
-                name = entry.getKey();
-            }
-        }
-        if (name == null) {
-            return null;
+    @SuppressWarnings("deprecation")
+    private static int getLayout(int sensorType) {
+        switch (sensorType) {
+            case Sensor.TYPE_ACCELEROMETER:
+            case Sensor.TYPE_ACCELEROMETER_UNCALIBRATED:
+            case Sensor.TYPE_LINEAR_ACCELERATION:
+            case Sensor.TYPE_GRAVITY:
+            case Sensor.TYPE_MAGNETIC_FIELD:
+            case Sensor.TYPE_MAGNETIC_FIELD_UNCALIBRATED:
+            case Sensor.TYPE_GYROSCOPE:
+                return SensorFormat.XYZ;
+            case Sensor.TYPE_GYROSCOPE_UNCALIBRATED:
+                return SensorFormat.GYROSCOPE_UNCALIBRATED;
+            case Sensor.TYPE_ORIENTATION:
+                return SensorFormat.ZXY;
+            case Sensor.TYPE_PROXIMITY:
+            case Sensor.TYPE_LIGHT:
+            case Sensor.TYPE_STEP_COUNTER:
+                return SensorFormat.VALUE;
+            case Sensor.TYPE_ROTATION_VECTOR:
+            case Sensor.TYPE_GAME_ROTATION_VECTOR:
+                return SensorFormat.ROTATION;
         }
-        return name;
+        return SensorFormat.VALUES;
     }
 
     @SuppressWarnings("deprecation")
@@ -237,6 +585,139 @@ public class SensorsFragment extends AbstractFragment implements SensorEventList
         return "";
     }
 
+    private class SensorAdapter extends RecyclerView.Adapter<SensorHolder> {
+
+        @NonNull
+        @Override
+        public SensorHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            return new SensorHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.view_sensor, parent, false));
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull SensorHolder holder, int position) {
+            SensorRow row = sensorRows[position];
+            holder.nameView.setText(row.name);
+            holder.chartView.setVisibility(row.expanded ? View.VISIBLE : View.GONE);
+            holder.chartView.setBuffer(row.expanded ? getBuffer(position) : null);
+            holder.show(row);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull SensorHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+            } else {
+                // Only the sample changed
+                holder.show(sensorRows[position]);
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return sensorRows.length;
+        }
+    }
+
+    /**
+     * A click expands the row into a chart of the sensor, a long click shows its details.
+     */
+    private class SensorHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
+
+        private final TextView nameView;
+        private final TextView valueView;
+        private final TextView statsView;
+        private final SensorChartView chartView;
+
+        SensorHolder(View itemView) {
+            super(itemView);
+            nameView = itemView.findViewById(R.id.sensor_name);
+            valueView = itemView.findViewById(R.id.sensor_value);
+            statsView = itemView.findViewById(R.id.sensor_stats);
+            chartView = itemView.findViewById(R.id.sensor_chart);
+            itemView.setOnClickListener(this);
+            itemView.setOnLongClickListener(this);
+        }
+
+        void show(SensorRow row) {
+            row.value.show(valueView);
+            row.stats.show(statsView);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                sensorRows[position].expanded = !sensorRows[position].expanded;
+                sensorAdapter.notifyItemChanged(position);
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && sensorRows[position].detailsListener != null) {
+                sensorRows[position].detailsListener.onClick(v);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The latest text of a sensor in reusable buffers, shown by whichever view holder is bound to it.
+     * Derived sensors have neither a {@link Sensor}, a type nor details.
+     */
+    private static class SensorRow {
+
+        private final Sensor sensor;
+        private final String name;
+        private final int type;
+        private final View.OnClickListener detailsListener;
+        private final int layout;
+        private final String unit;
+        private final TextBuffer value = new TextBuffer();
+        private final TextBuffer stats = new TextBuffer();
+        private final float[] sample = new float[SensorRingBuffer.MAX_VALUES];
+        private long shownSequence;
+        private boolean expanded;
+
+        SensorRow(@Nullable Sensor sensor, String name, int type, @Nullable View.OnClickListener detailsListener, int layout, String unit) {
+            this.sensor = sensor;
+            this.name = name;
+            this.type = type;
+            this.detailsListener = detailsListener;
+            this.layout = layout;
+            this.unit = unit;
+        }
+    }
+
+    /**
+     * Text shown without creating a String. A view keeps the array it displays, so the buffer
+     * alternates between two.
+     */
+    private static class TextBuffer {
+
+        private final StringBuilder text = new StringBuilder(64);
+        private char[] front = new char[64];
+        private char[] back = new char[64];
+
+        StringBuilder clear() {
+            text.setLength(0);
+            return text;
+        }
+
+        void show(TextView view) {
+            int length = text.length();
+            if (back.length < length) {
+                back = new char[Math.max(length, 2 * back.length)];
+            }
+            text.getChars(0, length, back, 0);
+            view.setText(back, 0, length);
+            char[] shown = back;
+            back = front;
+            front = shown;
+        }
+    }
+
     private class SensorDetailsClickListener implements View.OnClickListener {
 
         private Sensor sensor;
@@ -302,6 +783,18 @@ public class SensorsFragment extends AbstractFragment implements SensorEventList
                 view.setVisibility(View.GONE);
                 viewGroup.findViewById(R.id.sensor_additional_info_label).setVisibility(View.GONE);
             }
+            SensorStats stats = engine.getStats(engine.getSlot(sensor));
+            view = viewGroup.findViewById(R.id.sensor_rate);
+            view.setText(getString(R.string.sensor_rate_unit, stats.getRate()));
+            view = viewGroup.findViewById(R.id.sensor_latency);
+            view.setText(getPercentiles(stats.getLatency()));
+            view = viewGroup.findViewById(R.id.sensor_jitter);
+            view.setText(getPercentiles(stats.getJitter()));
+            String spectrum = engine.getSpectrum(engine.getSlot(sensor));
+            view = viewGroup.findViewById(R.id.sensor_spectrum);
+            view.setText(spectrum);
+            view.setVisibility(spectrum == null ? View.GONE : View.VISIBLE);
+            viewGroup.findViewById(R.id.sensor_spectrum_label).setVisibility(spectrum == null ? View.GONE : View.VISIBLE);
             Context context = getContext();
             if (context != null) {
                 new AlertDialog.Builder(getContext())
@@ -313,25 +806,27 @@ public class SensorsFragment extends AbstractFragment implements SensorEventList
         }
     }
 
+    private String getPercentiles(LogHistogram histogram) {
+        return getString(R.string.sensor_percentiles_unit, histogram.getPercentile(50) / 1e6,
+                histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6);
+    }
+
     class TriggerListener extends TriggerEventListener {
         public void onTrigger(TriggerEvent event) {
-            Sensor sensor = event.sensor;
-            TextView valueView = sensorValuesMap.get(sensor);
-            if (valueView != null) {
-                String value = getString(R.string.sensor_no_values, event.timestamp);
-                valueView.setText(value);
+            int slot = engine.getSlot(event.sensor);
+            if (slot >= 0) {
+                sensorRows[slot].value.clear().append(getString(R.string.sensor_no_values, event.timestamp));
+                sensorAdapter.notifyItemChanged(slot, PAYLOAD_SAMPLE);
             }
         }
     }
 
-    @Override
-    int getTitle() {
-        return R.string.menu_sensors;
+    /**
+     * Loaded on first use, not with the fragment.
+     */
+    private static final class Constants {
+        static final NearestConstant GRAVITY = NearestConstant.of(SensorManager.class, float.class, "GRAVITY_(.+)");
+        static final NearestConstant LIGHT = NearestConstant.of(SensorManager.class, float.class, "LIGHT_(.+)");
+        static final NearestConstant MAGNETIC_FIELD = NearestConstant.of(SensorManager.class, float.class, "MAGNETIC_FIELD_(.+)");
     }
-
-    @Override
-    int getIcon() {
-        return R.drawable.ic_sensors;
-    }
-
 }
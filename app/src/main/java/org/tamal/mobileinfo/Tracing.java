@@ -0,0 +1,106 @@
+package org.tamal.mobileinfo;
+
+import android.os.Trace;
+import android.util.Log;
+
+import org.tamal.mobileinfo.core.SpanAggregates;
+import org.tamal.mobileinfo.core.SpanRecorder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times spans of the app, both as {@link Trace} sections for the system profilers and in a
+ * {@link SpanRecorder}, whose aggregates are kept in a file across launches so that slow
+ * devices and regressions show without attaching a profiler.
+ */
+final class Tracing {
+
+    private static final String TAG = "Tracing";
+    private static final String FILE = "spans.tsv";
+    private static final int CAPACITY = 1024;
+    private static final SpanRecorder RECORDER = new SpanRecorder(CAPACITY);
+    // Guarded by Tracing.class, read from the file on first use
+    private static SpanAggregates aggregates;
+
+    private Tracing() {
+    }
+
+    /**
+     * @return the id of the span named {@code name}, for {@link #begin} and {@link #end}. Resolved
+     * once, such as in a constant, not per span.
+     */
+    static int id(String name) {
+        return RECORDER.id(name);
+    }
+
+    /**
+     * Begins a span on this thread, it must be ended on the same thread.
+     *
+     * @return the start of the span, for {@link #end}.
+     */
+    static long begin(int id) {
+        Trace.beginSection(RECORDER.getName(id));
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the span begun by {@link #begin} with the same id, the innermost one of this thread.
+     *
+     * @return the duration of the span in nanoseconds.
+     */
+    static long end(int id, long start) {
+        long end = System.nanoTime();
+        Trace.endSection();
+        RECORDER.record(id, start, end);
+        return end - start;
+    }
+
+    /**
+     * Adds the spans recorded since the last call to the aggregates of every launch and saves
+     * them in {@code dir}. Reads and writes a file, not on the main thread.
+     *
+     * @return the {@code min/avg/max} of every span by name.
+     */
+    static synchronized Map<String, String> persist(File dir) {
+        File file = new File(dir, FILE);
+        if (aggregates == null) {
+            aggregates = new SpanAggregates();
+            if (file.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    aggregates.read(reader);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot read " + file, e);
+                }
+            }
+        }
+        RECORDER.drain(aggregates);
+        // Replaces the file only once completely written
+        File temporary = new File(dir, FILE + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8))) {
+            aggregates.write(writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + temporary, e);
+        }
+        if (!temporary.renameTo(file)) {
+            Log.w(TAG, "Cannot rename " + temporary);
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder();
+        for (String name : aggregates.getNames()) {
+            sb.setLength(0);
+            map.put(name, aggregates.appendSummary(name, sb).toString());
+        }
+        return map;
+    }
+}
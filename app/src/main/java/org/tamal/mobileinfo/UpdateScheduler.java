@@ -0,0 +1,76 @@
+package org.tamal.mobileinfo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies UI updates signalled from any thread on the main thread, in one batch per
+ * {@link Choreographer} frame. Updates are keyed by what they update: signalling a key again
+ * before the frame replaces its pending update, so a burst of signals costs one update.
+ */
+final class UpdateScheduler implements Choreographer.FrameCallback, Runnable {
+
+    private static final UpdateScheduler INSTANCE = new UpdateScheduler();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+    // Guarded by lock
+    private Map<Object, Runnable> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+    // Only used on the main thread
+    private Map<Object, Runnable> applying = new LinkedHashMap<>();
+
+    private UpdateScheduler() {
+    }
+
+    static UpdateScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs {@code update} on the main thread at the next frame, unless {@code key} is signalled
+     * again before it: then only the last update runs. Updates run in the order their keys
+     * were first signalled.
+     */
+    void schedule(Object key, Runnable update) {
+        synchronized (lock) {
+            pending.put(key, update);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            run();
+        } else {
+            handler.post(this);
+        }
+    }
+
+    /**
+     * Posts the frame callback, the {@link Choreographer} of the main thread only takes it there.
+     */
+    @Override
+    public void run() {
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        Map<Object, Runnable> updates;
+        synchronized (lock) {
+            updates = pending;
+            pending = applying;
+            applying = updates;
+            scheduled = false;
+        }
+        for (Runnable update : updates.values()) {
+            update.run();
+        }
+        updates.clear();
+    }
+}
@@ -0,0 +1,41 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.Utils;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Utils#findConstant} and {@link Utils#findConstants} over the int constants of {@link Calendar}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstantLookupBenchmark {
+
+    private int value;
+
+    @Benchmark
+    public String findConstant() {
+        value = (value + 1) & 0xF;
+        return Utils.findConstant(Calendar.class, value, "^([A-Z_]+)$");
+    }
+
+    @Benchmark
+    public Map<String, Integer> findConstants() {
+        return Utils.findConstants(Calendar.class, int.class, "^([A-Z_]+)$");
+    }
+}
@@ -0,0 +1,93 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.Utils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Utils#findProperties(Object)} and {@link Utils#findFields(Object)} over a getter-heavy
+ * object shaped like {@code NetworkInfo}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertiesBenchmark {
+
+    private final Sample sample = new Sample();
+
+    @Benchmark
+    public Map<String, Object> findProperties() {
+        return Utils.findProperties(sample);
+    }
+
+    @Benchmark
+    public Map<String, Object> findFields() {
+        return Utils.findFields(sample);
+    }
+
+    public static class Sample {
+
+        public int type = 1;
+        public int subtype = 13;
+        public String typeName = "MOBILE";
+        public String subtypeName = "LTE";
+        public boolean roaming;
+
+        public int getType() {
+            return type;
+        }
+
+        public int getSubtype() {
+            return subtype;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public String getSubtypeName() {
+            return subtypeName;
+        }
+
+        public String getExtraInfo() {
+            return "internet";
+        }
+
+        public String getReason() {
+            return null;
+        }
+
+        public boolean isAvailable() {
+            return true;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public boolean isConnectedOrConnecting() {
+            return true;
+        }
+
+        public boolean isFailover() {
+            return false;
+        }
+
+        public boolean isRoaming() {
+            return roaming;
+        }
+    }
+}
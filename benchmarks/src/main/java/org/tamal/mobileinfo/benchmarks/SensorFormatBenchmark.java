@@ -0,0 +1,111 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.NearestConstant;
+import org.tamal.mobileinfo.core.SensorFormat;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-event work of an accelerometer row: format x, y, z and name the nearest gravity.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorFormatBenchmark {
+
+    /**
+     * The format string {@link SensorFormat#XYZ} replaced.
+     */
+    private static final String XYZ_UNIT = "x=%1$+.2f%4$s, y=%2$+.2f%4$s, z=%3$+.2f%4$s";
+    private static final String UNIT = "m/s\u00b2";
+
+    private final float[] values = {0.12f, -0.34f, 9.79f};
+    private final StringBuilder buffer = new StringBuilder(64);
+    private Map<String, Float> gravity;
+    private NearestConstant gravityTable;
+
+    @Setup
+    public void setUp() {
+        // SensorManager.GRAVITY_*
+        gravity = new TreeMap<>();
+        gravity.put("SUN", 275.0f);
+        gravity.put("MERCURY", 3.7f);
+        gravity.put("VENUS", 8.87f);
+        gravity.put("EARTH", 9.80665f);
+        gravity.put("MOON", 1.6f);
+        gravity.put("MARS", 3.71f);
+        gravity.put("JUPITER", 23.12f);
+        gravity.put("SATURN", 8.96f);
+        gravity.put("URANUS", 8.69f);
+        gravity.put("NEPTUNE", 11.0f);
+        gravity.put("PLUTO", 0.6f);
+        gravity.put("DEATH_STAR_I", 3.5303614E-7f);
+        gravity.put("THE_ISLAND", 4.815162f);
+        gravityTable = new NearestConstant(gravity);
+    }
+
+    @Benchmark
+    public String formatXyz() {
+        float[] v = values;
+        v[0] = -v[0];
+        float magnitude = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        String value = String.format(Locale.getDefault(), XYZ_UNIT, v[0], v[1], v[2], UNIT);
+        return value + " (" + scan(gravity, magnitude) + ")";
+    }
+
+    @Benchmark
+    public StringBuilder appendXyz() {
+        float[] v = values;
+        v[0] = -v[0];
+        float magnitude = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        StringBuilder sb = buffer;
+        sb.setLength(0);
+        SensorFormat.append(sb, SensorFormat.XYZ, v, v.length, UNIT);
+        return sb.append(" (").append(gravityTable.nameOf(magnitude)).append(')');
+    }
+
+    @Benchmark
+    public String findNearest() {
+        values[2] = -values[2];
+        return scan(gravity, values[2]);
+    }
+
+    @Benchmark
+    public String nearestConstant() {
+        values[2] = -values[2];
+        return gravityTable.nameOf(Math.abs(values[2]));
+    }
+
+    /**
+     * The lookup as it was before {@link NearestConstant}: a scan of every entry per call.
+     */
+    private static String scan(Map<String, Float> map, float value) {
+        float absValue = Math.abs(value);
+        String name = null;
+        float minDelta = Float.MAX_VALUE;
+        for (Map.Entry<String, Float> entry : map.entrySet()) {
+            float delta = Math.abs(entry.getValue() - absValue);
+            if (delta < minDelta) {
+                minDelta = delta;
+                name = entry.getKey();
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,58 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.SensorFusion;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of deriving the orientation from raw accelerometer and magnetometer samples,
+ * against reading it from the rotation vector the hardware fuses. Run with {@code -prof gc}
+ * to see that neither allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorFusionBenchmark {
+
+    private final SensorFusion fusion = new SensorFusion();
+    private final float[] accelerometer = {0.8f, 4.9f, 8.4f};
+    private final float[] magneticField = {12.5f, -20.1f, -35.7f};
+    private final float[] gyroscope = {0.01f, -0.02f, 0.5f};
+    private final float[] rotationVector = {0.12f, -0.2f, 0.32f, 0.92f};
+    private final float[] rotationMatrix = new float[9];
+    private final float[] orientation = new float[3];
+    private long timestamp;
+
+    {
+        fusion.onMagneticField(magneticField);
+    }
+
+    @Benchmark
+    public float derived() {
+        timestamp += 5000000;
+        accelerometer[0] = -accelerometer[0];
+        fusion.onGyroscope(timestamp, gyroscope);
+        fusion.onAccelerometer(timestamp, accelerometer);
+        return fusion.getHeading();
+    }
+
+    @Benchmark
+    public float hardware() {
+        rotationVector[0] = -rotationVector[0];
+        SensorFusion.getRotationMatrixFromVector(rotationMatrix, rotationVector, 4);
+        SensorFusion.getOrientation(rotationMatrix, orientation);
+        return orientation[0];
+    }
+}
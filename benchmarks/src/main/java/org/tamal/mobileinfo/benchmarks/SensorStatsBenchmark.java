@@ -0,0 +1,58 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.SensorStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-event cost of recording rate, jitter and latency, which stays on for every event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorStatsBenchmark {
+
+    private final SensorStats stats = new SensorStats();
+    private long timestamp;
+
+    @Benchmark
+    public void record() {
+        // A 200 Hz sensor with a little jitter, delivered 1 to 4 ms late
+        timestamp += 5000000 + (timestamp & 0xffff);
+        stats.record(timestamp, timestamp + 1000000 + (timestamp & 0x3fffff));
+    }
+
+    @Benchmark
+    public StringBuilder appendSummary(SummaryState state) {
+        StringBuilder sb = state.buffer;
+        sb.setLength(0);
+        return state.stats.appendSummary(sb);
+    }
+
+    @State(Scope.Thread)
+    public static class SummaryState {
+
+        final SensorStats stats = new SensorStats();
+        final StringBuilder buffer = new StringBuilder(128);
+
+        public SummaryState() {
+            long timestamp = 0;
+            for (int i = 0; i < 10000; i++) {
+                timestamp += 5000000 + (i % 7) * 10000;
+                stats.record(timestamp, timestamp + 1000000 + (i % 13) * 100000);
+            }
+        }
+    }
+}
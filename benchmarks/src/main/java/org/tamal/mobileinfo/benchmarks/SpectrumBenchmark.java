@@ -0,0 +1,68 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.SensorRingBuffer;
+import org.tamal.mobileinfo.core.SpectrumAnalyzer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one vibration spectrum, run twice a second per sensor on the analysis thread.
+ * Run with {@code -prof gc} to see that it allocates nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpectrumBenchmark {
+
+    private static final double RATE = 400;
+
+    @Param({"256", "1024"})
+    private int size;
+    private SpectrumAnalyzer analyzer;
+    private SensorRingBuffer buffer;
+    private float[] samples;
+
+    @Setup
+    public void setUp() {
+        analyzer = new SpectrumAnalyzer(size);
+        buffer = new SensorRingBuffer(2 * size);
+        samples = new float[size];
+        Random random = new Random(42);
+        float[] values = new float[3];
+        for (int i = 0; i < size; i++) {
+            // An accelerometer on a machine vibrating at 50 Hz, with noise
+            values[0] = (float) (0.1 * random.nextGaussian());
+            values[1] = (float) (0.1 * random.nextGaussian());
+            values[2] = (float) (9.81 + Math.sin(2 * Math.PI * 50 * i / RATE) + 0.1 * random.nextGaussian());
+            buffer.write((long) (i * 1e9 / RATE), 3, values, 3);
+            samples[i] = values[2];
+        }
+    }
+
+    @Benchmark
+    public double analyzeSamples() {
+        analyzer.analyze(samples, RATE);
+        return analyzer.getPeakFrequency(0);
+    }
+
+    @Benchmark
+    public double analyzeRingBuffer() {
+        analyzer.analyze(buffer, buffer.sequence());
+        return analyzer.getPeakFrequency(0);
+    }
+}
@@ -0,0 +1,66 @@
+package org.tamal.mobileinfo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tamal.mobileinfo.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Utils#toString(Object)} over the kind of values shown on the Home and Network tabs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToStringBenchmark {
+
+    private Properties properties;
+    private List<Object> linkProperties;
+    private int[] capabilities;
+
+    @Setup
+    public void setUp() {
+        properties = System.getProperties();
+        Map<String, Object> route = new TreeMap<>();
+        route.put("Destination", "0.0.0.0/0");
+        route.put("Gateway", "192.168.1.1");
+        route.put("Interface", "wlan0");
+        linkProperties = new ArrayList<>();
+        linkProperties.add(Arrays.asList("192.168.1.23/24", "fe80::1c2b:3dff:fe4e:5f60/64"));
+        linkProperties.add(route);
+        linkProperties.add(new String[]{"8.8.8.8", "8.8.4.4"});
+        capabilities = new int[]{0, 1, 2, 12, 13, 14, 15, 16, 18, 19, 20, 21};
+    }
+
+    @Benchmark
+    public String systemProperties() {
+        return Utils.toString(properties);
+    }
+
+    @Benchmark
+    public String linkProperties() {
+        return Utils.toString(linkProperties);
+    }
+
+    @Benchmark
+    public String primitiveArray() {
+        return Utils.toString(capabilities, ", ", "[", "]", null);
+    }
+}
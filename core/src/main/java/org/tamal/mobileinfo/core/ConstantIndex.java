@@ -0,0 +1,172 @@
+package org.tamal.mobileinfo.core;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Name/value tables of the public static final fields of a class, built once per
+ * (class, field type, regex) and shared by every later lookup. Tables generated at build
+ * time are {@link #preload preloaded}, reflection then only fills in what they miss.
+ */
+public final class ConstantIndex {
+
+    private static final ConcurrentMap<Key, ConstantIndex> CACHE = new ConcurrentHashMap<>();
+
+    private final Key key;
+    private final boolean complete;
+    private final SortedMap<String, Object> forward;
+    private final Map<Object, String> reverse;
+    private volatile ConstantIndex reflective;
+
+    private ConstantIndex(Key key, boolean complete, SortedMap<String, Object> forward, Map<Object, String> reverse) {
+        this.key = key;
+        this.complete = complete;
+        this.forward = Collections.unmodifiableSortedMap(forward);
+        this.reverse = reverse;
+    }
+
+    static ConstantIndex of(Class<?> classType, @Nullable Class<?> fieldType, @Nullable String regex) {
+        Key key = new Key(classType.getName(), fieldType, regex);
+        ConstantIndex index = CACHE.get(key);
+        if (index == null) {
+            index = build(classType, key);
+            ConstantIndex previous = CACHE.putIfAbsent(key, index);
+            if (previous != null) {
+                index = previous;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Registers a table generated at build time. The class is referenced by name so that
+     * classes missing on older platforms are never loaded.
+     *
+     * @param complete whether the table holds every constant of the running platform,
+     *                 otherwise {@link #asMap()} reflects
+     */
+    public static void preload(String className, @Nullable Class<?> fieldType, @Nullable String regex, boolean complete,
+                               String[] names, Object[] values) {
+        SortedMap<String, Object> forward = new TreeMap<>();
+        Map<Object, String> reverse = new HashMap<>(values.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            put(forward, reverse, names[i], values[i]);
+        }
+        Key key = new Key(className, fieldType, regex);
+        CACHE.put(key, new ConstantIndex(key, complete, forward, reverse));
+    }
+
+    /**
+     * @return the name of the first declared constant equal to {@code value}, or {@code null}.
+     */
+    @Nullable
+    String nameOf(Object value) {
+        String name = reverse.get(value);
+        if (name == null && reflective() != this) {
+            // Constants added after the table was generated, or hidden from the SDK stubs
+            name = reflective().nameOf(value);
+        }
+        return name;
+    }
+
+    /**
+     * @return an unmodifiable view of all constants sorted by name.
+     */
+    SortedMap<String, Object> asMap() {
+        return complete ? forward : reflective().forward;
+    }
+
+    private ConstantIndex reflective() {
+        ConstantIndex index = reflective;
+        if (index == null) {
+            try {
+                index = build(Class.forName(key.className), key);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+            reflective = index;
+        }
+        return index;
+    }
+
+    private static ConstantIndex build(Class<?> classType, Key key) {
+        SortedMap<String, Object> forward = new TreeMap<>();
+        Map<Object, String> reverse = new HashMap<>();
+        Pattern pattern = key.regex == null ? null : Pattern.compile(key.regex);
+        for (Field field : classType.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isPublic(modifiers) || !Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers)) {
+                continue;
+            }
+            if (key.fieldType != null && field.getType() != key.fieldType) {
+                continue;
+            }
+            String name = field.getName();
+            if (pattern != null) {
+                Matcher matcher = pattern.matcher(name);
+                if (!matcher.find()) {
+                    continue;
+                }
+                if (matcher.groupCount() == 1) {
+                    name = matcher.group(1);
+                }
+            }
+            try {
+                put(forward, reverse, name, field.get(null));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        ConstantIndex index = new ConstantIndex(key, true, forward, reverse);
+        index.reflective = index;
+        return index;
+    }
+
+    private static void put(SortedMap<String, Object> forward, Map<Object, String> reverse, String name, Object value) {
+        forward.put(name, value);
+        if (value != null && !reverse.containsKey(value)) {
+            reverse.put(value, name);
+        }
+    }
+
+    private static final class Key {
+
+        private final String className;
+        private final Class<?> fieldType;
+        private final String regex;
+
+        Key(String className, Class<?> fieldType, String regex) {
+            this.className = className;
+            this.fieldType = fieldType;
+            this.regex = regex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return className.equals(other.className) && fieldType == other.fieldType
+                    && (regex == null ? other.regex == null : regex.equals(other.regex));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = className.hashCode();
+            hash = 31 * hash + (fieldType == null ? 0 : fieldType.hashCode());
+            return 31 * hash + (regex == null ? 0 : regex.hashCode());
+        }
+    }
+}
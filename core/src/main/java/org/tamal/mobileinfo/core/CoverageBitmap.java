@@ -0,0 +1,147 @@
+package org.tamal.mobileinfo.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compact set of Unicode code points, such as those a font has glyphs for. Code points are
+ * kept in pages of 256 bits; only the pages with a code point are stored, sorted by page number
+ * and found by binary search. Immutable, built by a {@link Builder}.
+ */
+public final class CoverageBitmap {
+
+    private static final int PAGE_SHIFT = 8;
+    private static final int WORDS = (1 << PAGE_SHIFT) / Long.SIZE;
+    private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+    private final int[] pages;
+    private final long[] bits;
+    private final int size;
+
+    private CoverageBitmap(int[] pages, long[] bits) {
+        this.pages = pages;
+        this.bits = bits;
+        int size = 0;
+        for (long word : bits) {
+            size += Long.bitCount(word);
+        }
+        this.size = size;
+    }
+
+    public boolean contains(int codePoint) {
+        if (codePoint < 0 || codePoint > MAX_CODE_POINT) {
+            return false;
+        }
+        int index = Arrays.binarySearch(pages, codePoint >>> PAGE_SHIFT);
+        if (index < 0) {
+            return false;
+        }
+        int bit = codePoint & ((1 << PAGE_SHIFT) - 1);
+        return (bits[index * WORDS + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return whether every code point of {@code text} is covered, ignoring line breaks and tabs.
+     */
+    public boolean containsAll(CharSequence text) {
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            if (codePoint != '\n' && codePoint != '\r' && codePoint != '\t' && !contains(codePoint)) {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of code points covered.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes the pages take.
+     */
+    public int getPageBytes() {
+        return pages.length * 4 + bits.length * 8;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(pages.length);
+        for (int i = 0; i < pages.length; i++) {
+            out.writeInt(pages[i]);
+            for (int w = 0; w < WORDS; w++) {
+                out.writeLong(bits[i * WORDS + w]);
+            }
+        }
+    }
+
+    /**
+     * Reads what {@link #write} wrote.
+     */
+    public static CoverageBitmap read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > (MAX_CODE_POINT >>> PAGE_SHIFT) + 1) {
+            throw new IOException("Invalid page count: " + count);
+        }
+        int[] pages = new int[count];
+        long[] bits = new long[count * WORDS];
+        for (int i = 0; i < count; i++) {
+            pages[i] = in.readInt();
+            if (pages[i] < 0 || pages[i] > MAX_CODE_POINT >>> PAGE_SHIFT || i > 0 && pages[i] <= pages[i - 1]) {
+                throw new IOException("Invalid page: " + pages[i]);
+            }
+            for (int w = 0; w < WORDS; w++) {
+                bits[i * WORDS + w] = in.readLong();
+            }
+        }
+        return new CoverageBitmap(pages, bits);
+    }
+
+    /**
+     * Adds code points in any order. Not thread-safe.
+     */
+    public static final class Builder {
+
+        // A page of words per page number, allocated as code points are added to it
+        private final long[][] pages = new long[(MAX_CODE_POINT >>> PAGE_SHIFT) + 1][];
+
+        public Builder add(int codePoint) {
+            if (codePoint < 0 || codePoint > MAX_CODE_POINT) {
+                return this;
+            }
+            int page = codePoint >>> PAGE_SHIFT;
+            long[] words = pages[page];
+            if (words == null) {
+                words = pages[page] = new long[WORDS];
+            }
+            int bit = codePoint & ((1 << PAGE_SHIFT) - 1);
+            words[bit >>> 6] |= 1L << bit;
+            return this;
+        }
+
+        public CoverageBitmap build() {
+            int count = 0;
+            for (long[] words : pages) {
+                if (words != null) {
+                    count++;
+                }
+            }
+            int[] numbers = new int[count];
+            long[] bits = new long[count * WORDS];
+            int index = 0;
+            for (int page = 0; page < pages.length; page++) {
+                if (pages[page] != null) {
+                    numbers[index] = page;
+                    System.arraycopy(pages[page], 0, bits, index * WORDS, WORDS);
+                    index++;
+                }
+            }
+            return new CoverageBitmap(numbers, bits);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.tamal.mobileinfo.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the events a sensor direct channel writes into shared memory. The memory is a ring of
+ * {@link #RECORD_SIZE} byte records in native (little-endian) order:
+ * <pre>
+ * offset  type       field
+ *  0      int32      record size, 104
+ *  4      int32      report token, returned by {@code SensorDirectChannel.configure}
+ *  8      int32      sensor type
+ * 12      uint32     atomic counter, 1 for the first record and incremented for each one
+ * 16      int64      timestamp in nanoseconds
+ * 24      float[16]  values
+ * 88      int32[4]   reserved
+ * </pre>
+ * The records are read in place and the counter tells new records from old ones, so a reader
+ * only has to remember the position and the counter of the last record it saw.
+ */
+public final class DirectReportParser {
+
+    public static final int RECORD_SIZE = 104;
+    static final int OFFSET_SIZE = 0;
+    static final int OFFSET_TOKEN = 4;
+    static final int OFFSET_TYPE = 8;
+    static final int OFFSET_COUNTER = 12;
+    static final int OFFSET_TIMESTAMP = 16;
+    static final int OFFSET_VALUES = 24;
+    public static final int VALUE_COUNT = 16;
+
+    /**
+     * Receives the parsed records.
+     */
+    public interface Listener {
+        /**
+         * @param values the {@link #VALUE_COUNT} values, only valid during the call.
+         */
+        void onReport(int token, int type, long timestamp, float[] values);
+    }
+
+    private final float[] values = new float[VALUE_COUNT];
+    private long counter;
+    private long lost;
+
+    /**
+     * Reports the new records among the {@code records} ones starting at {@code offset}, in order,
+     * and stops at the first record which is not newer than the last one reported.
+     *
+     * @param buffer the records, in little-endian order.
+     * @return the number of records reported.
+     */
+    public int parse(ByteBuffer buffer, int offset, int records, Listener listener) {
+        int parsed = 0;
+        for (int position = offset; parsed < records; position += RECORD_SIZE) {
+            if (buffer.getInt(position + OFFSET_SIZE) != RECORD_SIZE) {
+                break;
+            }
+            long next = buffer.getInt(position + OFFSET_COUNTER) & 0xffffffffL;
+            if (next <= counter) {
+                break;
+            }
+            if (counter > 0 && next > counter + 1) {
+                // The writer has lapped the reader
+                lost += next - counter - 1;
+            }
+            counter = next;
+            for (int i = 0; i < VALUE_COUNT; i++) {
+                values[i] = buffer.getFloat(position + OFFSET_VALUES + 4 * i);
+            }
+            listener.onReport(buffer.getInt(position + OFFSET_TOKEN), buffer.getInt(position + OFFSET_TYPE),
+                    buffer.getLong(position + OFFSET_TIMESTAMP), values);
+            parsed++;
+        }
+        return parsed;
+    }
+
+    /**
+     * @return the counter of the last record reported, 0 if none.
+     */
+    public long getCounter() {
+        return counter;
+    }
+
+    /**
+     * @return the number of records overwritten before they were parsed.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * Forgets the last record, for a new channel.
+     */
+    public void reset() {
+        counter = 0;
+        lost = 0;
+    }
+}
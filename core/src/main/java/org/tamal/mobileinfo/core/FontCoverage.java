@@ -0,0 +1,180 @@
+package org.tamal.mobileinfo.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The glyph count and the code points covered by a font, parsed in place from an sfnt font
+ * file (TrueType, OpenType or a collection of them) such as a memory-mapped one: only the table
+ * directory, {@code maxp} and the Unicode {@code cmap} subtable are read, with absolute
+ * big-endian reads that neither copy the buffer nor move its position.
+ */
+public final class FontCoverage {
+
+    private static final int TTC_TAG = 0x74746366; // 'ttcf'
+    private static final int CMAP_TAG = 0x636d6170; // 'cmap'
+    private static final int MAXP_TAG = 0x6d617870; // 'maxp'
+    private static final int TABLE_RECORD = 16;
+
+    private final int glyphCount;
+    private final CoverageBitmap coverage;
+
+    public FontCoverage(int glyphCount, CoverageBitmap coverage) {
+        this.glyphCount = glyphCount;
+        this.coverage = coverage;
+    }
+
+    public int getGlyphCount() {
+        return glyphCount;
+    }
+
+    public CoverageBitmap getCoverage() {
+        return coverage;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(glyphCount);
+        coverage.write(out);
+    }
+
+    /**
+     * Reads what {@link #write} wrote.
+     */
+    public static FontCoverage read(DataInput in) throws IOException {
+        int glyphCount = in.readInt();
+        return new FontCoverage(glyphCount, CoverageBitmap.read(in));
+    }
+
+    /**
+     * Parses every font of {@code font}: one for a font file, all of a font collection's.
+     *
+     * @throws IllegalArgumentException if {@code font} is not a valid sfnt font file.
+     */
+    public static FontCoverage[] parse(ByteBuffer font) {
+        try {
+            if (font.getInt(0) != TTC_TAG) {
+                return new FontCoverage[]{parse(font, 0)};
+            }
+            int count = font.getInt(8);
+            if (count <= 0 || count > (font.limit() - 12) / 4) {
+                throw new IllegalArgumentException("Invalid font count: " + count);
+            }
+            FontCoverage[] fonts = new FontCoverage[count];
+            for (int i = 0; i < count; i++) {
+                fonts[i] = parse(font, font.getInt(12 + i * 4));
+            }
+            return fonts;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated font", e);
+        }
+    }
+
+    private static FontCoverage parse(ByteBuffer font, int offset) {
+        int tables = font.getShort(offset + 4) & 0xffff;
+        int cmap = -1;
+        int maxp = -1;
+        for (int i = 0; i < tables; i++) {
+            int record = offset + 12 + i * TABLE_RECORD;
+            int tag = font.getInt(record);
+            if (tag == CMAP_TAG) {
+                cmap = font.getInt(record + 8);
+            } else if (tag == MAXP_TAG) {
+                maxp = font.getInt(record + 8);
+            }
+        }
+        if (cmap < 0 || maxp < 0) {
+            throw new IllegalArgumentException("No cmap or maxp table");
+        }
+        int glyphCount = font.getShort(maxp + 4) & 0xffff;
+        return new FontCoverage(glyphCount, parseCmap(font, cmap, glyphCount));
+    }
+
+    /**
+     * Reads the full Unicode subtable (format 12 or 13) if any, the BMP one (format 4) if not.
+     */
+    private static CoverageBitmap parseCmap(ByteBuffer font, int cmap, int glyphCount) {
+        int subtables = font.getShort(cmap + 2) & 0xffff;
+        int full = -1;
+        int bmp = -1;
+        for (int i = 0; i < subtables; i++) {
+            int record = cmap + 4 + i * 8;
+            int platform = font.getShort(record) & 0xffff;
+            int encoding = font.getShort(record + 2) & 0xffff;
+            int subtable = cmap + font.getInt(record + 4);
+            boolean unicode = platform == 0 || platform == 3 && (encoding == 1 || encoding == 10 || encoding == 0);
+            if (!unicode) {
+                continue;
+            }
+            int format = font.getShort(subtable) & 0xffff;
+            if ((format == 12 || format == 13) && full < 0) {
+                full = subtable;
+            } else if (format == 4 && bmp < 0) {
+                bmp = subtable;
+            }
+        }
+        CoverageBitmap.Builder builder = new CoverageBitmap.Builder();
+        if (full >= 0) {
+            parseGroups(font, full, glyphCount, builder);
+        } else if (bmp >= 0) {
+            parseFormat4(font, bmp, glyphCount, builder);
+        } else {
+            throw new IllegalArgumentException("No Unicode cmap subtable");
+        }
+        return builder.build();
+    }
+
+    private static void parseFormat4(ByteBuffer font, int subtable, int glyphCount, CoverageBitmap.Builder builder) {
+        int segments = (font.getShort(subtable + 6) & 0xffff) / 2;
+        int ends = subtable + 14;
+        int starts = ends + segments * 2 + 2;
+        int deltas = starts + segments * 2;
+        int rangeOffsets = deltas + segments * 2;
+        for (int i = 0; i < segments; i++) {
+            int end = font.getShort(ends + i * 2) & 0xffff;
+            int start = font.getShort(starts + i * 2) & 0xffff;
+            int delta = font.getShort(deltas + i * 2);
+            int rangeOffset = font.getShort(rangeOffsets + i * 2) & 0xffff;
+            for (int codePoint = start; codePoint <= end && codePoint != 0xffff; codePoint++) {
+                int glyph;
+                if (rangeOffset == 0) {
+                    glyph = (codePoint + delta) & 0xffff;
+                } else {
+                    // Relative to where the range offset itself is stored
+                    int index = rangeOffsets + i * 2 + rangeOffset + (codePoint - start) * 2;
+                    glyph = font.getShort(index) & 0xffff;
+                    if (glyph != 0) {
+                        glyph = (glyph + delta) & 0xffff;
+                    }
+                }
+                if (glyph != 0 && glyph < glyphCount) {
+                    builder.add(codePoint);
+                }
+            }
+        }
+    }
+
+    private static void parseGroups(ByteBuffer font, int subtable, int glyphCount, CoverageBitmap.Builder builder) {
+        boolean constant = (font.getShort(subtable) & 0xffff) == 13;
+        long groups = font.getInt(subtable + 12) & 0xffffffffL;
+        if (groups > (font.limit() - subtable - 16) / 12) {
+            throw new IllegalArgumentException("Invalid group count: " + groups);
+        }
+        for (int i = 0; i < groups; i++) {
+            int group = subtable + 16 + i * 12;
+            int start = font.getInt(group);
+            int end = Math.min(font.getInt(group + 4), Character.MAX_CODE_POINT);
+            int glyph = font.getInt(group + 8);
+            if (start < 0 || start > end) {
+                continue;
+            }
+            for (int codePoint = start; codePoint <= end; codePoint++) {
+                long id = constant ? glyph : glyph + (long) (codePoint - start);
+                if (id != 0 && id < glyphCount) {
+                    builder.add(codePoint);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.tamal.mobileinfo.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of non-negative longs with logarithmic buckets: every power of two is
+ * split into {@link #SUB_BUCKETS} linear buckets, so a percentile is off by at most 1/8 of the
+ * value. Values up to 2^{@link #MAX_EXPONENT} are told apart, larger ones share the last bucket.
+ * <p>
+ * Recording is a few plain arithmetic operations and two ordered stores. There must be only
+ * one recording thread, any thread may read while it records.
+ */
+public final class LogHistogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds {@code value}, negative values count as 0. Only ever called by the recording thread.
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        int index = Math.min(bucket(v), BUCKETS - 1);
+        counts.lazySet(index, counts.get(index) + 1);
+        if (v > max.get()) {
+            max.lazySet(v);
+        }
+        count.lazySet(count.get() + 1);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the upper bound of the bucket holding the percentile, capped by the maximum; 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(lowerBound(i + 1) - 1, max.get());
+            }
+        }
+        // Racing with the recording thread, the buckets lag behind the count
+        return max.get();
+    }
+
+    /**
+     * Empties the histogram. Only ever called by the recording thread.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.lazySet(i, 0);
+        }
+        max.lazySet(0);
+        count.lazySet(0);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,99 @@
+package org.tamal.mobileinfo.core;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named reference values, such as {@code SensorManager.GRAVITY_*}, sorted into a primitive
+ * array so the name nearest to a measured value is found by binary search without boxing.
+ */
+public final class NearestConstant {
+
+    private final float[] values;
+    private final String[] names;
+
+    /**
+     * @param constants names and values; equal values keep the first name in iteration order.
+     */
+    public NearestConstant(Map<String, ? extends Number> constants) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map.Entry<String, ? extends Number>[] entries = constants.entrySet().toArray(new Map.Entry[0]);
+        // A stable sort, so equal values stay in iteration order
+        Arrays.sort(entries, new Comparator<Map.Entry<String, ? extends Number>>() {
+            @Override
+            public int compare(Map.Entry<String, ? extends Number> e1, Map.Entry<String, ? extends Number> e2) {
+                return Float.compare(e1.getValue().floatValue(), e2.getValue().floatValue());
+            }
+        });
+        values = new float[entries.length];
+        names = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            values[i] = entries[i].getValue().floatValue();
+            names[i] = entries[i].getKey();
+        }
+    }
+
+    /**
+     * The numeric constants of {@code classType}, see {@link Utils#findConstants(Class, Class, String)}.
+     */
+    public static NearestConstant of(Class<?> classType, @Nullable Class<?> fieldType, @Nullable String regex) {
+        Map<String, Object> constants = ConstantIndex.of(classType, fieldType, regex).asMap();
+        Map<String, Number> numbers = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : constants.entrySet()) {
+            if (entry.getValue() instanceof Number) {
+                numbers.put(entry.getKey(), (Number) entry.getValue());
+            }
+        }
+        return new NearestConstant(numbers);
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public float getValue(int index) {
+        return values[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return the index of the value nearest to {@code value}, the lower one on a tie, or -1 if empty.
+     */
+    public int indexOf(float value) {
+        if (values.length == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            int above = -index - 1;
+            if (above == 0) {
+                index = 0;
+            } else if (above == values.length || value - values[above - 1] <= values[above] - value) {
+                index = above - 1;
+            } else {
+                index = above;
+            }
+        }
+        // The first of equal values
+        while (index > 0 && values[index - 1] == values[index]) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * @return the name of the value nearest to {@code value}, or {@code null} if empty.
+     */
+    @Nullable
+    public String nameOf(float value) {
+        int index = indexOf(value);
+        return index < 0 ? null : names[index];
+    }
+}
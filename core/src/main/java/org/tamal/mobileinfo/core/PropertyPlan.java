@@ -0,0 +1,144 @@
+package org.tamal.mobileinfo.core;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The no-argument getters of a class matching a regex, resolved and sorted by display name
+ * once per (class, regex). Reading an object is then a single pass over the accessor array.
+ */
+final class PropertyPlan {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertyPlan.class.getName());
+    private static final ConcurrentMap<Key, PropertyPlan> CACHE = new ConcurrentHashMap<>();
+    // Returned by invoke for a getter which failed, unlike null a getter may return
+    private static final Object FAILED = new Object();
+
+    private final String[] names;
+    private final Method[] methods;
+
+    private PropertyPlan(String[] names, Method[] methods) {
+        this.names = names;
+        this.methods = methods;
+    }
+
+    static PropertyPlan of(Class<?> cls, @Nullable String regex) {
+        Key key = new Key(cls, regex);
+        PropertyPlan plan = CACHE.get(key);
+        if (plan == null) {
+            plan = build(cls, regex);
+            PropertyPlan previous = CACHE.putIfAbsent(key, plan);
+            if (previous != null) {
+                plan = previous;
+            }
+        }
+        return plan;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    Method getMethod(int index) {
+        return methods[index];
+    }
+
+    /**
+     * @return the properties of {@code target} in name order, but for those whose getter failed.
+     */
+    Map<String, Object> toMap(Object target) {
+        Map<String, Object> map = new LinkedHashMap<>(methods.length * 2);
+        for (int i = 0; i < methods.length; i++) {
+            Object value = invoke(methods[i], target);
+            if (value != FAILED) {
+                map.put(names[i], value);
+            }
+        }
+        return map;
+    }
+
+    private static Object invoke(Method method, Object target) {
+        try {
+            return method.invoke(target);
+        } catch (IllegalAccessException e) {
+            LOGGER.log(Level.FINE, "Method: " + method + " Error: " + e.toString() + " Cause: " + e.getCause());
+        } catch (InvocationTargetException e) {
+            LOGGER.log(Level.SEVERE, "Method: " + method + " Error: " + e.toString() + " Cause: " + e.getCause());
+        }
+        return FAILED;
+    }
+
+    private static PropertyPlan build(Class<?> cls, @Nullable String regex) {
+        Map<String, Method> map = new TreeMap<>();
+        Pattern pattern = regex == null ? null : Pattern.compile(regex);
+        for (Method method : cls.getMethods()) {
+            int modifiers = method.getModifiers();
+            if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers) || method.getParameterTypes().length != 0
+                    || Object.class == method.getDeclaringClass()) {
+                continue;
+            }
+            String name = method.getName();
+            if (pattern != null) {
+                Matcher matcher = pattern.matcher(name);
+                if (!matcher.find()) {
+                    continue;
+                }
+                if (matcher.groupCount() == 1) {
+                    name = matcher.group(1);
+                }
+            }
+            try {
+                // Public getters declared on hidden implementation classes are otherwise inaccessible
+                method.setAccessible(true);
+            } catch (RuntimeException e) {
+                // SecurityException, or InaccessibleObjectException on module-enforcing JVMs
+                LOGGER.log(Level.FINE, "Method: " + method + " Error: " + e.toString());
+            }
+            map.put(name, method);
+        }
+        String[] names = map.keySet().toArray(new String[0]);
+        Method[] methods = map.values().toArray(new Method[0]);
+        return new PropertyPlan(names, methods);
+    }
+
+    private static final class Key {
+
+        private final Class<?> cls;
+        private final String regex;
+
+        Key(Class<?> cls, String regex) {
+            this.cls = cls;
+            this.regex = regex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return cls == other.cls && (regex == null ? other.regex == null : regex.equals(other.regex));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cls.hashCode() + (regex == null ? 0 : regex.hashCode());
+        }
+    }
+}
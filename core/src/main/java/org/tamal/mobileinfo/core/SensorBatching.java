@@ -0,0 +1,32 @@
+package org.tamal.mobileinfo.core;
+
+/**
+ * Sizes the report latency of batched sensors, so the hardware FIFO fills up before the
+ * application processor has to wake up, but never overflows.
+ */
+public final class SensorBatching {
+
+    /**
+     * The share of the FIFO filled before a batch is reported, the rest absorbs jitter and
+     * sensors sharing the FIFO.
+     */
+    static final double FILL_FACTOR = 0.5;
+
+    private SensorBatching() {
+    }
+
+    /**
+     * @param reservedEvents   {@code Sensor.getFifoReservedEventCount()}, the FIFO space guaranteed to the sensor.
+     * @param maxEvents        {@code Sensor.getFifoMaxEventCount()}, the FIFO space the sensor may get when shared.
+     * @param samplingPeriodUs the period the sensor is registered with.
+     * @return the {@code maxReportLatencyUs} to register with, 0 if the sensor cannot batch.
+     */
+    public static int maxReportLatencyUs(int reservedEvents, int maxEvents, int samplingPeriodUs) {
+        int events = reservedEvents > 0 ? reservedEvents : maxEvents;
+        if (events <= 0 || samplingPeriodUs <= 0) {
+            return 0;
+        }
+        long latency = (long) (events * FILL_FACTOR) * samplingPeriodUs;
+        return (int) Math.min(latency, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,140 @@
+package org.tamal.mobileinfo.core;
+
+/**
+ * Reduces a range of a {@link SensorRingBuffer} to at most one bucket per pixel, keeping the
+ * minimum and the maximum of every value in a bucket in the order they occurred. Drawing a
+ * line through both points of each bucket preserves the peaks a plain decimation would drop.
+ * <p>
+ * All arrays are allocated up front, downsampling allocates nothing.
+ */
+public final class SensorDownsampler {
+
+    private final int maxBuckets;
+    private final float[] first;
+    private final float[] second;
+    private final float[] sample = new float[SensorRingBuffer.MAX_VALUES];
+    private final float[] min = new float[SensorRingBuffer.MAX_VALUES];
+    private final float[] max = new float[SensorRingBuffer.MAX_VALUES];
+    private final long[] minSequence = new long[SensorRingBuffer.MAX_VALUES];
+    private final long[] maxSequence = new long[SensorRingBuffer.MAX_VALUES];
+    private int buckets;
+    private int series;
+    private float lowest;
+    private float highest;
+
+    public SensorDownsampler(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+        first = new float[maxBuckets * SensorRingBuffer.MAX_VALUES];
+        second = new float[maxBuckets * SensorRingBuffer.MAX_VALUES];
+    }
+
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+
+    /**
+     * Downsamples the samples {@code from} inclusive to {@code to} exclusive. Samples the writer
+     * overwrote meanwhile are skipped.
+     *
+     * @param buckets the number of buckets wanted, at most {@link #getMaxBuckets()}.
+     * @return the number of buckets filled, fewer than asked for if there are fewer samples.
+     */
+    public int downsample(SensorRingBuffer buffer, long from, long to, int buckets) {
+        long samples = Math.max(to - from, 0);
+        int wanted = (int) Math.min(Math.min(buckets, maxBuckets), samples);
+        this.buckets = 0;
+        series = 0;
+        lowest = Float.POSITIVE_INFINITY;
+        highest = Float.NEGATIVE_INFINITY;
+        for (int bucket = 0; bucket < wanted; bucket++) {
+            // Spreads the remainder evenly, every bucket has at least one sample
+            long start = from + samples * bucket / wanted;
+            long end = from + samples * (bucket + 1) / wanted;
+            int count = 0;
+            for (long sequence = start; sequence < end; sequence++) {
+                int read = buffer.read(sequence, sample);
+                if (read <= 0) {
+                    continue;
+                }
+                if (count == 0) {
+                    if (series == 0) {
+                        series = read;
+                    }
+                    for (int i = 0; i < series; i++) {
+                        min[i] = max[i] = sample[i];
+                        minSequence[i] = maxSequence[i] = sequence;
+                    }
+                } else {
+                    for (int i = 0; i < series; i++) {
+                        if (sample[i] < min[i]) {
+                            min[i] = sample[i];
+                            minSequence[i] = sequence;
+                        } else if (sample[i] > max[i]) {
+                            max[i] = sample[i];
+                            maxSequence[i] = sequence;
+                        }
+                    }
+                }
+                count++;
+            }
+            if (count > 0) {
+                add();
+            }
+        }
+        return this.buckets;
+    }
+
+    private void add() {
+        int offset = buckets * SensorRingBuffer.MAX_VALUES;
+        for (int i = 0; i < series; i++) {
+            boolean minFirst = minSequence[i] <= maxSequence[i];
+            first[offset + i] = minFirst ? min[i] : max[i];
+            second[offset + i] = minFirst ? max[i] : min[i];
+            lowest = Math.min(lowest, min[i]);
+            highest = Math.max(highest, max[i]);
+        }
+        buckets++;
+    }
+
+    /**
+     * @return the number of buckets filled by the last {@link #downsample}.
+     */
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @return the number of values of each sample, taken from the first sample read.
+     */
+    public int getSeries() {
+        return series;
+    }
+
+    /**
+     * @return the earlier of the minimum and the maximum of {@code series} in {@code bucket}.
+     */
+    public float getFirst(int bucket, int series) {
+        return first[bucket * SensorRingBuffer.MAX_VALUES + series];
+    }
+
+    /**
+     * @return the later of the minimum and the maximum of {@code series} in {@code bucket}.
+     */
+    public float getSecond(int bucket, int series) {
+        return second[bucket * SensorRingBuffer.MAX_VALUES + series];
+    }
+
+    /**
+     * @return the smallest value of all series, infinite if there are no buckets.
+     */
+    public float getLowest() {
+        return lowest;
+    }
+
+    /**
+     * @return the largest value of all series, negative infinite if there are no buckets.
+     */
+    public float getHighest() {
+        return highest;
+    }
+}
@@ -0,0 +1,126 @@
+package org.tamal.mobileinfo.core;
+
+/**
+ * Writes sensor values into a caller supplied {@link StringBuilder} without allocating.
+ * Numbers look like {@code String.format(Locale.ROOT, "%+.2f", value)}.
+ */
+public final class SensorFormat {
+
+    /**
+     * All values separated by {@code ", "}.
+     */
+    public static final int VALUES = 0;
+    /**
+     * {@code R.string.sensor_value_unit}: the first value followed by the unit.
+     */
+    public static final int VALUE = 1;
+    /**
+     * {@code x=+0.00unit, y=+0.00unit, z=+0.00unit}: the first three values.
+     */
+    public static final int XYZ = 2;
+    /**
+     * {@link #XYZ} with the values in azimuth last order, for orientation.
+     */
+    public static final int ZXY = 3;
+    /**
+     * {@code Rotation: x=.., y=.., z=.. rad/s}, then {@code Drift:} likewise on a second line.
+     */
+    public static final int GYROSCOPE_UNCALIBRATED = 4;
+    /**
+     * {@code sin(\u03b8/2)*(x, y, z)=(..), cos(\u03b8/2)=..}: a unit quaternion.
+     */
+    public static final int ROTATION = 5;
+
+    private static final int DECIMALS = 2;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private SensorFormat() {
+    }
+
+    /**
+     * Appends the first {@code count} values of {@code v} in the given {@code layout}, one of
+     * the constants of this class.
+     */
+    public static StringBuilder append(StringBuilder sb, int layout, float[] v, int count, String unit) {
+        switch (layout) {
+            case VALUE:
+                return appendSigned(sb, v[0]).append(' ').append(unit);
+            case XYZ:
+                return appendXyz(sb, v[0], v[1], v[2], unit);
+            case ZXY:
+                return appendXyz(sb, v[2], v[0], v[1], unit);
+            case GYROSCOPE_UNCALIBRATED:
+                appendXyz(sb.append("Rotation: "), v[0], v[1], v[2], "").append(" rad/s\nDrift: ");
+                return appendXyz(sb, v[3], v[4], v[5], "").append(" rad/s");
+            case ROTATION:
+                appendSigned(sb.append("sin(\u03b8/2)*(x, y, z)=("), v[0]);
+                appendSigned(sb.append(", "), v[1]);
+                appendSigned(sb.append(", "), v[2]);
+                return appendSigned(sb.append("), cos(\u03b8/2)="), v[3]);
+            default:
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    appendSigned(sb, v[i]);
+                }
+                return sb;
+        }
+    }
+
+    private static StringBuilder appendXyz(StringBuilder sb, float x, float y, float z, String unit) {
+        appendSigned(sb.append("x="), x).append(unit);
+        appendSigned(sb.append(", y="), y).append(unit);
+        return appendSigned(sb.append(", z="), z).append(unit);
+    }
+
+    /**
+     * Appends {@code value} with two decimals.
+     *
+     * @see #appendSigned(StringBuilder, float, int)
+     */
+    public static StringBuilder appendSigned(StringBuilder sb, float value) {
+        return appendSigned(sb, value, DECIMALS);
+    }
+
+    /**
+     * Appends {@code value} with a leading sign, rounded half up to {@code decimals} (at most 6) digits.
+     */
+    public static StringBuilder appendSigned(StringBuilder sb, float value, int decimals) {
+        if (!Float.isNaN(value) && !(value < 0 || (value == 0 && Float.floatToRawIntBits(value) != 0))) {
+            sb.append('+');
+        }
+        return appendFixed(sb, value, decimals);
+    }
+
+    /**
+     * Appends {@code value} rounded half up to {@code decimals} (at most 6) digits, signed only if negative.
+     */
+    public static StringBuilder appendFixed(StringBuilder sb, double value, int decimals) {
+        if (Double.isNaN(value)) {
+            return sb.append("NaN");
+        }
+        if (value < 0 || (value == 0 && Double.doubleToRawLongBits(value) != 0)) {
+            sb.append('-');
+        }
+        if (Double.isInfinite(value)) {
+            return sb.append("Infinity");
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double abs = Math.abs(value);
+        if (abs >= Long.MAX_VALUE / scale) {
+            // Beyond any sensor range, not worth a digit loop of its own
+            return sb.append(abs);
+        }
+        long scaled = Math.round(abs * scale);
+        sb.append(scaled / scale);
+        if (decimals > 0) {
+            sb.append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                sb.append((char) ('0' + fraction / digit % 10));
+            }
+        }
+        return sb;
+    }
+}
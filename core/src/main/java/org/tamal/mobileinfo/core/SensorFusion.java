@@ -0,0 +1,264 @@
+package org.tamal.mobileinfo.core;
+
+/**
+ * Virtual sensors derived from raw accelerometer, magnetometer and gyroscope samples, for
+ * devices without the fused hardware ones:
+ * <ul>
+ * <li>gravity, by low-pass filtering the acceleration, and the linear acceleration left over;</li>
+ * <li>tilt, the angle between the device z axis and the vertical;</li>
+ * <li>the rotation matrix and the orientation, by the math of
+ * {@code SensorManager.getRotationMatrix} and {@code SensorManager.getOrientation};</li>
+ * <li>heading, the azimuth integrated from the gyroscope and pulled toward the magnetic one.</li>
+ * </ul>
+ * All state is preallocated, feeding samples allocates nothing. Not thread-safe.
+ */
+public final class SensorFusion {
+
+    /**
+     * Below a tenth of standard gravity the device is in free fall and has no vertical.
+     */
+    private static final float MIN_GRAVITY_SQUARED = 0.01f * 9.80665f * 9.80665f;
+    private static final float MIN_HORIZONTAL_FIELD = 0.1f;
+    private static final float GRAVITY_TIME_CONSTANT_SECONDS = 0.5f;
+    /**
+     * The share of the gyroscope in the heading at each accelerometer sample.
+     */
+    private static final float HEADING_GYROSCOPE_WEIGHT = 0.98f;
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private final float[] gravity = new float[3];
+    private final float[] linearAcceleration = new float[3];
+    private final float[] magneticField = new float[3];
+    private final float[] rotationMatrix = new float[9];
+    private final float[] orientation = new float[3];
+    private long accelerometerTimestamp = Long.MIN_VALUE;
+    private long gyroscopeTimestamp = Long.MIN_VALUE;
+    private boolean hasMagneticField;
+    private boolean hasRotation;
+    private boolean hasHeading;
+    private float tilt;
+    private double heading;
+
+    /**
+     * Updates gravity, linear acceleration and tilt, and the rotation if there is a magnetic field.
+     */
+    public void onAccelerometer(long timestamp, float[] v) {
+        if (accelerometerTimestamp == Long.MIN_VALUE) {
+            System.arraycopy(v, 0, gravity, 0, 3);
+        } else {
+            float dt = Math.max(timestamp - accelerometerTimestamp, 0) / 1e9f;
+            float alpha = GRAVITY_TIME_CONSTANT_SECONDS / (GRAVITY_TIME_CONSTANT_SECONDS + dt);
+            for (int i = 0; i < 3; i++) {
+                gravity[i] = alpha * gravity[i] + (1 - alpha) * v[i];
+            }
+        }
+        accelerometerTimestamp = timestamp;
+        for (int i = 0; i < 3; i++) {
+            linearAcceleration[i] = v[i] - gravity[i];
+        }
+        float norm = (float) Math.sqrt(gravity[0] * gravity[0] + gravity[1] * gravity[1] + gravity[2] * gravity[2]);
+        tilt = norm == 0 ? 0 : (float) Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, gravity[2] / norm))));
+        if (!hasMagneticField) {
+            return;
+        }
+        hasRotation = getRotationMatrix(rotationMatrix, gravity, magneticField);
+        if (hasRotation) {
+            getOrientation(rotationMatrix, orientation);
+            if (hasHeading) {
+                heading = wrap(heading + (1 - HEADING_GYROSCOPE_WEIGHT) * wrap(orientation[0] - heading));
+            } else {
+                heading = wrap(orientation[0]);
+                hasHeading = true;
+            }
+        }
+    }
+
+    public void onMagneticField(float[] v) {
+        System.arraycopy(v, 0, magneticField, 0, 3);
+        hasMagneticField = true;
+    }
+
+    /**
+     * Turns the heading by the rotation about the vertical since the last gyroscope sample.
+     */
+    public void onGyroscope(long timestamp, float[] v) {
+        if (hasHeading && gyroscopeTimestamp != Long.MIN_VALUE) {
+            float norm = (float) Math.sqrt(gravity[0] * gravity[0] + gravity[1] * gravity[1] + gravity[2] * gravity[2]);
+            if (norm > 0) {
+                // Counterclockwise about the up axis turns the azimuth west
+                double up = (v[0] * gravity[0] + v[1] * gravity[1] + v[2] * gravity[2]) / norm;
+                heading = wrap(heading - up * Math.max(timestamp - gyroscopeTimestamp, 0) / 1e9);
+            }
+        }
+        gyroscopeTimestamp = timestamp;
+    }
+
+    /**
+     * @return whether an accelerometer sample was fed.
+     */
+    public boolean hasGravity() {
+        return accelerometerTimestamp != Long.MIN_VALUE;
+    }
+
+    /**
+     * @return whether the rotation could be computed from the last samples.
+     */
+    public boolean hasRotation() {
+        return hasRotation;
+    }
+
+    public float[] getGravity() {
+        return gravity;
+    }
+
+    public float[] getLinearAcceleration() {
+        return linearAcceleration;
+    }
+
+    /**
+     * @return the angle between the device z axis and up, in degrees: 0 lying face up, 90 upright.
+     */
+    public float getTilt() {
+        return tilt;
+    }
+
+    /**
+     * @return the rotation matrix from device to world coordinates, row-major.
+     */
+    public float[] getRotationMatrix() {
+        return rotationMatrix;
+    }
+
+    /**
+     * @return azimuth, pitch and roll in radians, as {@code SensorManager.getOrientation} returns them.
+     */
+    public float[] getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * @return the heading in degrees from magnetic north, 0 to 360.
+     */
+    public float getHeading() {
+        double degrees = Math.toDegrees(heading);
+        return (float) (degrees < 0 ? degrees + 360 : degrees);
+    }
+
+    /**
+     * @return {@code angle} wrapped into {@code (-pi, pi]}.
+     */
+    private static double wrap(double angle) {
+        double wrapped = angle % TWO_PI;
+        if (wrapped > Math.PI) {
+            wrapped -= TWO_PI;
+        } else if (wrapped <= -Math.PI) {
+            wrapped += TWO_PI;
+        }
+        return wrapped;
+    }
+
+    /**
+     * The math of {@code SensorManager.getRotationMatrix}, without the inclination matrix.
+     *
+     * @param r         receives the 3x3 rotation matrix, row-major.
+     * @param gravity   the gravity vector in device coordinates.
+     * @param geomagnetic the magnetic field vector in device coordinates.
+     * @return false in free fall or close to the magnetic poles, {@code r} is then unchanged.
+     */
+    public static boolean getRotationMatrix(float[] r, float[] gravity, float[] geomagnetic) {
+        float ax = gravity[0];
+        float ay = gravity[1];
+        float az = gravity[2];
+        float normSquared = ax * ax + ay * ay + az * az;
+        if (normSquared < MIN_GRAVITY_SQUARED) {
+            return false;
+        }
+        float ex = geomagnetic[0];
+        float ey = geomagnetic[1];
+        float ez = geomagnetic[2];
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < MIN_HORIZONTAL_FIELD) {
+            return false;
+        }
+        float invH = 1.0f / normH;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+        float invA = 1.0f / (float) Math.sqrt(normSquared);
+        ax *= invA;
+        ay *= invA;
+        az *= invA;
+        r[0] = hx;
+        r[1] = hy;
+        r[2] = hz;
+        r[3] = ay * hz - az * hy;
+        r[4] = az * hx - ax * hz;
+        r[5] = ax * hy - ay * hx;
+        r[6] = ax;
+        r[7] = ay;
+        r[8] = az;
+        return true;
+    }
+
+    /**
+     * The math of {@code SensorManager.getOrientation} for a 3x3 matrix.
+     *
+     * @param values receives azimuth, pitch and roll in radians.
+     */
+    public static void getOrientation(float[] r, float[] values) {
+        values[0] = (float) Math.atan2(r[1], r[4]);
+        values[1] = (float) Math.asin(-r[7]);
+        values[2] = (float) Math.atan2(-r[6], r[8]);
+    }
+
+    /**
+     * The math of {@code SensorManager.getRotationMatrixFromVector} for a 3x3 matrix.
+     *
+     * @param count the number of values in {@code rotationVector}, the scalar part is computed if less than 4.
+     */
+    public static void getRotationMatrixFromVector(float[] r, float[] rotationVector, int count) {
+        float q1 = rotationVector[0];
+        float q2 = rotationVector[1];
+        float q3 = rotationVector[2];
+        float q0;
+        if (count >= 4) {
+            q0 = rotationVector[3];
+        } else {
+            q0 = 1 - q1 * q1 - q2 * q2 - q3 * q3;
+            q0 = q0 > 0 ? (float) Math.sqrt(q0) : 0;
+        }
+        float sqQ1 = 2 * q1 * q1;
+        float sqQ2 = 2 * q2 * q2;
+        float sqQ3 = 2 * q3 * q3;
+        float q1q2 = 2 * q1 * q2;
+        float q3q0 = 2 * q3 * q0;
+        float q1q3 = 2 * q1 * q3;
+        float q2q0 = 2 * q2 * q0;
+        float q2q3 = 2 * q2 * q3;
+        float q1q0 = 2 * q1 * q0;
+        r[0] = 1 - sqQ2 - sqQ3;
+        r[1] = q1q2 - q3q0;
+        r[2] = q1q3 + q2q0;
+        r[3] = q1q2 + q3q0;
+        r[4] = 1 - sqQ1 - sqQ3;
+        r[5] = q2q3 - q1q0;
+        r[6] = q1q3 - q2q0;
+        r[7] = q2q3 + q1q0;
+        r[8] = 1 - sqQ1 - sqQ2;
+    }
+
+    /**
+     * @return the angle of the rotation between two rotation matrices, in radians.
+     */
+    public static double angleBetween(float[] r1, float[] r2) {
+        // The trace of r1 transposed times r2
+        double trace = 0;
+        for (int i = 0; i < 9; i++) {
+            trace += r1[i] * r2[i];
+        }
+        return Math.acos(Math.max(-1, Math.min(1, (trace - 1) / 2)));
+    }
+}
@@ -0,0 +1,335 @@
+package org.tamal.mobileinfo.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resamples several sensors onto a common clock: every {@code period} nanoseconds it emits a
+ * row with the values of each sensor at that instant, interpolated between the samples just
+ * before and just after it. Values are interpolated linearly, rotation vectors by spherical
+ * linear interpolation of their quaternions.
+ * <p>
+ * Rows are kept in a columnar ring of fixed capacity, one array per column. Joining is
+ * incremental: {@link #advance()} emits the rows up to the newest instant all sensors have
+ * reached and allocates nothing. There must be only one joining thread, any thread may read
+ * the rows; a row overwritten while it is read is reported as not live.
+ */
+public final class SensorJoin {
+
+    private static final double SLERP_THRESHOLD = 0.9995;
+
+    private final SensorRingBuffer[] inputs;
+    private final int[] offsets;
+    private final int[] widths;
+    private final boolean[] rotations;
+    private final long period;
+    private final long[] cursors;
+    private final int mask;
+    private final long[] timestamps;
+    private final float[][] columns;
+    private final AtomicLong rows = new AtomicLong();
+    private final float[] before = new float[SensorRingBuffer.MAX_VALUES];
+    private final float[] after = new float[SensorRingBuffer.MAX_VALUES];
+    // Only used by the joining thread
+    private long next = Long.MIN_VALUE;
+    private long resyncs;
+
+    /**
+     * @param inputs    the sensors to join.
+     * @param widths    the number of values taken from each sensor; 4 for a rotation vector.
+     * @param rotations whether each sensor is a rotation vector, a quaternion without or with its scalar part.
+     * @param period    the interval between rows in nanoseconds.
+     * @param capacity  the number of rows kept, rounded up to a power of two.
+     */
+    public SensorJoin(SensorRingBuffer[] inputs, int[] widths, boolean[] rotations, long period, int capacity) {
+        this.inputs = inputs.clone();
+        this.widths = widths.clone();
+        this.rotations = rotations.clone();
+        this.period = period;
+        offsets = new int[inputs.length];
+        int width = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            if (rotations[i] && widths[i] != 4) {
+                throw new IllegalArgumentException("A rotation vector is joined as 4 values: " + widths[i]);
+            }
+            offsets[i] = width;
+            width += widths[i];
+        }
+        cursors = new long[inputs.length];
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        timestamps = new long[size];
+        columns = new float[width][size];
+    }
+
+    /**
+     * Emits the rows up to the newest instant every sensor has delivered a sample for. The
+     * first call starts the clock at the newest samples. Only ever called by the joining thread.
+     *
+     * @return the number of rows emitted.
+     */
+    public int advance() {
+        long end = Long.MAX_VALUE;
+        for (SensorRingBuffer input : inputs) {
+            long sequence = input.sequence();
+            if (sequence == 0) {
+                return 0;
+            }
+            end = Math.min(end, input.timestamp(sequence - 1));
+        }
+        if (next == Long.MIN_VALUE && !start()) {
+            return 0;
+        }
+        int emitted = 0;
+        while (next <= end) {
+            long row = rows.get();
+            int index = (int) row & mask;
+            for (int i = 0; i < inputs.length; i++) {
+                if (!interpolate(i, index)) {
+                    // The joining thread fell behind the writer, starts over from the newest samples
+                    resyncs++;
+                    next = Long.MIN_VALUE;
+                    return emitted;
+                }
+            }
+            timestamps[index] = next;
+            rows.lazySet(row + 1);
+            emitted++;
+            next += period;
+        }
+        return emitted;
+    }
+
+    /**
+     * Starts the clock at the first multiple of the period after the newest samples.
+     */
+    private boolean start() {
+        long first = Long.MIN_VALUE;
+        for (int i = 0; i < inputs.length; i++) {
+            cursors[i] = inputs[i].sequence() - 1;
+            long timestamp = inputs[i].timestamp(cursors[i]);
+            if (timestamp == Long.MIN_VALUE) {
+                return false;
+            }
+            first = Math.max(first, timestamp);
+        }
+        long ticks = first / period;
+        next = (first < 0 && ticks * period != first ? ticks : ticks + 1) * period;
+        return true;
+    }
+
+    /**
+     * Writes the values of input {@code i} at {@link #next} into the row at {@code index}.
+     *
+     * @return false if a sample was overwritten.
+     */
+    private boolean interpolate(int i, int index) {
+        SensorRingBuffer input = inputs[i];
+        long limit = input.sequence();
+        long cursor = cursors[i];
+        while (cursor + 1 < limit) {
+            long timestamp = input.timestamp(cursor + 1);
+            if (timestamp == Long.MIN_VALUE) {
+                return false;
+            }
+            if (timestamp > next) {
+                break;
+            }
+            cursor++;
+        }
+        cursors[i] = cursor;
+        long t0 = input.timestamp(cursor);
+        int count0 = input.read(cursor, before);
+        if (t0 == Long.MIN_VALUE || count0 < 0) {
+            return false;
+        }
+        pad(i, before, count0);
+        float fraction = 0;
+        if (cursor + 1 < limit) {
+            long t1 = input.timestamp(cursor + 1);
+            int count1 = input.read(cursor + 1, after);
+            if (t1 == Long.MIN_VALUE || count1 < 0) {
+                return false;
+            }
+            pad(i, after, count1);
+            fraction = t1 > t0 ? (float) (next - t0) / (t1 - t0) : 0;
+        } else {
+            System.arraycopy(before, 0, after, 0, widths[i]);
+        }
+        if (rotations[i]) {
+            slerp(before, after, fraction, offsets[i], index);
+        } else {
+            for (int v = 0; v < widths[i]; v++) {
+                columns[offsets[i] + v][index] = before[v] + (after[v] - before[v]) * fraction;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zeroes the values a sample does not have, or sets the scalar part of a rotation vector
+     * reported without one.
+     */
+    private void pad(int i, float[] values, int count) {
+        for (int v = count; v < widths[i]; v++) {
+            values[v] = 0;
+        }
+        if (rotations[i] && count == 3) {
+            values[3] = (float) Math.sqrt(Math.max(0, 1 - values[0] * values[0] - values[1] * values[1] - values[2] * values[2]));
+        }
+    }
+
+    private void slerp(float[] q0, float[] q1, float fraction, int offset, int index) {
+        double dot = q0[0] * q1[0] + q0[1] * q1[1] + q0[2] * q1[2] + q0[3] * q1[3];
+        // q and -q are the same rotation, takes the shorter way
+        double sign = dot < 0 ? -1 : 1;
+        dot *= sign;
+        double s0;
+        double s1;
+        if (dot > SLERP_THRESHOLD) {
+            s0 = 1 - fraction;
+            s1 = fraction;
+        } else {
+            double theta = Math.acos(dot);
+            double sin = Math.sin(theta);
+            s0 = Math.sin((1 - fraction) * theta) / sin;
+            s1 = Math.sin(fraction * theta) / sin;
+        }
+        s1 *= sign;
+        double norm = 0;
+        for (int v = 0; v < 4; v++) {
+            double value = s0 * q0[v] + s1 * q1[v];
+            columns[offset + v][index] = (float) value;
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int v = 0; v < 4; v++) {
+                columns[offset + v][index] /= norm;
+            }
+        }
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of rows emitted so far, the row number of the next one.
+     */
+    public long getRowCount() {
+        return rows.get();
+    }
+
+    /**
+     * @return how often the joining thread fell behind and started over.
+     */
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    /**
+     * @return the oldest row still kept.
+     */
+    public long getFirstRow() {
+        return Math.max(0, rows.get() - mask);
+    }
+
+    public long getTimestamp(long row) {
+        return timestamps[(int) row & mask];
+    }
+
+    public float getValue(long row, int column) {
+        return columns[column][(int) row & mask];
+    }
+
+    /**
+     * @return whether {@code row} was emitted and is not overwritten yet; check after reading it.
+     */
+    public boolean isLive(long row) {
+        long count = rows.get();
+        return row < count && count - row <= mask;
+    }
+
+    /**
+     * Copies the kept rows, such as for writing them out on another thread. Cheap next to
+     * formatting them: a single pass over each column.
+     */
+    public Snapshot snapshot() {
+        long first = getFirstRow();
+        long end = rows.get();
+        int count = (int) (end - first);
+        long[] times = new long[count];
+        float[][] values = new float[columns.length][count];
+        for (int r = 0; r < count; r++) {
+            times[r] = getTimestamp(first + r);
+        }
+        for (int column = 0; column < columns.length; column++) {
+            for (int r = 0; r < count; r++) {
+                values[column][r] = getValue(first + r, column);
+            }
+        }
+        // Leaves out the rows overwritten while they were copied
+        int skip = (int) Math.max(0, getFirstRow() - first);
+        return new Snapshot(times, values, Math.min(skip, count));
+    }
+
+    /**
+     * Writes the kept rows as CSV, a timestamp in nanoseconds followed by the columns.
+     *
+     * @param names the header of each column.
+     * @return the number of rows written.
+     */
+    public int writeCsv(Writer writer, String[] names) throws IOException {
+        return snapshot().writeCsv(writer, names);
+    }
+
+    /**
+     * The rows of a join at one point, independent of it.
+     */
+    public static final class Snapshot {
+
+        private final long[] timestamps;
+        private final float[][] columns;
+        private final int first;
+
+        Snapshot(long[] timestamps, float[][] columns, int first) {
+            this.timestamps = timestamps;
+            this.columns = columns;
+            this.first = first;
+        }
+
+        public int getRowCount() {
+            return timestamps.length - first;
+        }
+
+        /**
+         * Writes the rows as CSV, a timestamp in nanoseconds followed by the columns.
+         *
+         * @param names the header of each column.
+         * @return the number of rows written.
+         */
+        public int writeCsv(Writer writer, String[] names) throws IOException {
+            StringBuilder sb = new StringBuilder(16 * (columns.length + 1));
+            sb.append("timestamp");
+            for (String name : names) {
+                sb.append(',').append(name);
+            }
+            writer.append(sb).append('\n');
+            for (int row = first; row < timestamps.length; row++) {
+                sb.setLength(0);
+                sb.append(timestamps[row]);
+                for (float[] column : columns) {
+                    sb.append(',').append(column[row]);
+                }
+                writer.append(sb).append('\n');
+            }
+            return getRowCount();
+        }
+    }
+}
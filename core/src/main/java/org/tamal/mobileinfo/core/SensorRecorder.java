@@ -0,0 +1,118 @@
+package org.tamal.mobileinfo.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Appends sensor samples to a memory-mapped file. The file starts with a header:
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     offset of the first record, a multiple of 8
+ * int     sensor count
+ * long    record count, written on {@link #close()}
+ * sensor count times: int type, short name length, UTF-8 name
+ * </pre>
+ * followed by records of {@link #RECORD_SIZE} bytes: long timestamp, int slot, int accuracy,
+ * int value count, {@link SensorRingBuffer#MAX_VALUES} floats and 4 bytes of padding. All
+ * numbers are little-endian. The file is mapped {@link #CHUNK_RECORDS} records at a time, so
+ * writing a record is a plain memory store and the only system calls are the remaps.
+ * <p>
+ * Not thread safe, all calls must come from the same thread.
+ *
+ * @see SensorRecording
+ */
+public final class SensorRecorder implements Closeable {
+
+    static final int MAGIC = 0x4d495352;
+    static final int VERSION = 1;
+    static final int RECORD_COUNT_OFFSET = 16;
+    public static final int RECORD_SIZE = 88;
+    static final int CHUNK_RECORDS = 8192;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int recordsOffset;
+    private MappedByteBuffer chunk;
+    private long chunkRecord;
+    private long records;
+
+    public SensorRecorder(File file, int[] types, String[] names) throws IOException {
+        byte[][] encoded = new byte[names.length][];
+        int size = 24;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(UTF_8);
+            size += 6 + encoded[i].length;
+        }
+        recordsOffset = (size + 7) & ~7;
+        ByteBuffer buffer = ByteBuffer.allocate(recordsOffset).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(recordsOffset).putInt(types.length).putLong(0);
+        for (int i = 0; i < types.length; i++) {
+            buffer.putInt(types[i]).putShort((short) encoded[i].length).put(encoded[i]);
+        }
+        buffer.rewind();
+        this.file = new RandomAccessFile(file, "rw");
+        channel = this.file.getChannel();
+        try {
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of records written so far.
+     */
+    public long size() {
+        return records;
+    }
+
+    public void write(int slot, long timestamp, int accuracy, float[] values, int count) throws IOException {
+        if (chunk == null || records - chunkRecord == CHUNK_RECORDS) {
+            chunkRecord = records;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, recordsOffset + chunkRecord * RECORD_SIZE, (long) CHUNK_RECORDS * RECORD_SIZE);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int length = Math.min(count, SensorRingBuffer.MAX_VALUES);
+        int position = (int) (records - chunkRecord) * RECORD_SIZE;
+        chunk.putLong(position, timestamp);
+        chunk.putInt(position + 8, slot);
+        chunk.putInt(position + 12, accuracy);
+        chunk.putInt(position + 16, length);
+        for (int i = 0; i < length; i++) {
+            chunk.putFloat(position + 20 + 4 * i, values[i]);
+        }
+        records++;
+    }
+
+    /**
+     * Writes the record count and cuts off the unused end of the last chunk.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            count.putLong(0, records);
+            channel.write(count, RECORD_COUNT_OFFSET);
+            if (chunk != null) {
+                chunk.force();
+            }
+            chunk = null;
+            channel.truncate(recordsOffset + records * RECORD_SIZE);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.tamal.mobileinfo.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file written by {@link SensorRecorder}. The file is mapped read-only and the records
+ * are visited with a cursor, {@link #next()} moves to the next record and the getters return
+ * its fields.
+ */
+public final class SensorRecording {
+
+    private final MappedByteBuffer buffer;
+    private final int[] types;
+    private final String[] names;
+    private final int recordsOffset;
+    private final long records;
+    private long record = -1;
+    private int position;
+
+    private SensorRecording(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != SensorRecorder.MAGIC || buffer.getInt(4) != SensorRecorder.VERSION) {
+            throw new IOException("Not a sensor recording");
+        }
+        recordsOffset = buffer.getInt(8);
+        int sensorCount = buffer.getInt(12);
+        // A recorder which was never closed leaves the count at 0
+        records = Math.min(buffer.getLong(SensorRecorder.RECORD_COUNT_OFFSET),
+                (buffer.capacity() - recordsOffset) / SensorRecorder.RECORD_SIZE);
+        types = new int[sensorCount];
+        names = new String[sensorCount];
+        buffer.position(24);
+        for (int i = 0; i < sensorCount; i++) {
+            types[i] = buffer.getInt();
+            byte[] name = new byte[buffer.getShort() & 0xffff];
+            buffer.get(name);
+            names[i] = new String(name, SensorRecorder.UTF_8);
+        }
+    }
+
+    public static SensorRecording open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large: " + channel.size());
+            }
+            // The mapping stays valid after the file is closed
+            return new SensorRecording(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the number of sensors, the slots of the records are below this.
+     */
+    public int getSensorCount() {
+        return types.length;
+    }
+
+    public int getType(int slot) {
+        return types[slot];
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public long size() {
+        return records;
+    }
+
+    /**
+     * Moves the cursor back before the first record.
+     */
+    public void rewind() {
+        record = -1;
+    }
+
+    /**
+     * @return false when there are no more records.
+     */
+    public boolean next() {
+        if (record + 1 >= records) {
+            return false;
+        }
+        record++;
+        position = (int) (recordsOffset + record * SensorRecorder.RECORD_SIZE);
+        return true;
+    }
+
+    public long getTimestamp() {
+        return buffer.getLong(position);
+    }
+
+    public int getSlot() {
+        return buffer.getInt(position + 8);
+    }
+
+    public int getAccuracy() {
+        return buffer.getInt(position + 12);
+    }
+
+    /**
+     * Copies the values into {@code out}, which must hold {@link SensorRingBuffer#MAX_VALUES}.
+     *
+     * @return the value count.
+     */
+    public int getValues(float[] out) {
+        int count = buffer.getInt(position + 16);
+        for (int i = 0; i < count; i++) {
+            out[i] = buffer.getFloat(position + 20 + 4 * i);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package org.tamal.mobileinfo.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated samples of one sensor: up to {@link #MAX_VALUES} values, the timestamp and
+ * the accuracy of the last {@code capacity} events. There must be only one writer thread,
+ * any number of threads may read. A reader never blocks the writer; if the writer laps it
+ * while copying, the read is reported as failed instead of returning a torn sample.
+ */
+public final class SensorRingBuffer {
+
+    /**
+     * {@code SensorEvent.values} never holds more than 16 values.
+     */
+    public static final int MAX_VALUES = 16;
+
+    private final int mask;
+    private final float[] values;
+    private final long[] timestamps;
+    private final int[] accuracies;
+    private final int[] counts;
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * @param capacity the number of samples kept, rounded up to a power of two.
+     */
+    public SensorRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        values = new float[size * MAX_VALUES];
+        timestamps = new long[size];
+        accuracies = new int[size];
+        counts = new int[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of samples written so far, the sequence of the next sample.
+     */
+    public long sequence() {
+        return written.get();
+    }
+
+    /**
+     * Appends a sample, overwriting the oldest one when full. Only ever called by the writer thread.
+     */
+    public void write(long timestamp, int accuracy, float[] v, int count) {
+        long sequence = written.get();
+        int index = (int) sequence & mask;
+        int length = Math.min(count, MAX_VALUES);
+        System.arraycopy(v, 0, values, index * MAX_VALUES, length);
+        timestamps[index] = timestamp;
+        accuracies[index] = accuracy;
+        counts[index] = length;
+        // Publishes the sample, an ordered store is enough for a single writer
+        written.lazySet(sequence + 1);
+    }
+
+    /**
+     * Copies the values of the sample {@code sequence} into {@code out}.
+     *
+     * @return the value count, or -1 if the sample is not written yet or already overwritten.
+     */
+    public int read(long sequence, float[] out) {
+        if (sequence < 0 || sequence >= written.get()) {
+            return -1;
+        }
+        int index = (int) sequence & mask;
+        int count = counts[index];
+        System.arraycopy(values, index * MAX_VALUES, out, 0, count);
+        return isLive(sequence) ? count : -1;
+    }
+
+    /**
+     * @return the timestamp of the sample {@code sequence}, or {@link Long#MIN_VALUE} if it is not available.
+     */
+    public long timestamp(long sequence) {
+        if (sequence < 0 || sequence >= written.get()) {
+            return Long.MIN_VALUE;
+        }
+        long timestamp = timestamps[(int) sequence & mask];
+        return isLive(sequence) ? timestamp : Long.MIN_VALUE;
+    }
+
+    /**
+     * @return the accuracy of the sample {@code sequence}, or -1 if it is not available.
+     */
+    public int accuracy(long sequence) {
+        if (sequence < 0 || sequence >= written.get()) {
+            return -1;
+        }
+        int accuracy = accuracies[(int) sequence & mask];
+        return isLive(sequence) ? accuracy : -1;
+    }
+
+    /**
+     * Copies the values of the newest sample into {@code out}.
+     *
+     * @return the value count, or -1 if nothing is written yet.
+     */
+    public int readLatest(float[] out) {
+        int count;
+        do {
+            count = read(written.get() - 1, out);
+        } while (count < 0 && written.get() > 0);
+        return count;
+    }
+
+    private boolean isLive(long sequence) {
+        return written.get() - sequence <= mask;
+    }
+}
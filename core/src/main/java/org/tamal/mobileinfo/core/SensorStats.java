@@ -0,0 +1,108 @@
+package org.tamal.mobileinfo.core;
+
+/**
+ * Delivery statistics of one sensor: the event rate, the interval between events, the jitter
+ * (the change of the interval from one event to the next) and the latency (the time between
+ * the event timestamp and its delivery). All times are in nanoseconds.
+ * <p>
+ * The rate is measured over the last second or so, and the intervals only between events of
+ * the same registration: the gap while a sensor was unregistered is neither.
+ * <p>
+ * There must be only one recording thread, any thread may read while it records.
+ */
+public final class SensorStats {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final long NONE = Long.MIN_VALUE;
+    private static final long RATE_WINDOW = 1000000000L;
+
+    private final LogHistogram interval = new LogHistogram();
+    private final LogHistogram jitter = new LogHistogram();
+    private final LogHistogram latency = new LogHistogram();
+    private volatile double rate;
+    // Only used by the recording thread
+    private long lastTimestamp = NONE;
+    private long lastInterval = NONE;
+    private long windowStart;
+    private int windowEvents;
+    // Whether a whole rate window was measured since the last restart
+    private boolean windowed;
+
+    /**
+     * Breaks the chain of intervals, for when the sensor is registered again. Only ever called
+     * by the recording thread.
+     */
+    public void restart() {
+        lastTimestamp = NONE;
+        lastInterval = NONE;
+        windowed = false;
+    }
+
+    /**
+     * @param timestamp the event timestamp.
+     * @param now       the delivery time, on the clock of the timestamps ({@code SystemClock.elapsedRealtimeNanos()}).
+     */
+    public void record(long timestamp, long now) {
+        latency.record(now - timestamp);
+        if (lastTimestamp == NONE) {
+            windowStart = timestamp;
+            windowEvents = 0;
+        } else {
+            long current = timestamp - lastTimestamp;
+            interval.record(current);
+            if (lastInterval != NONE) {
+                jitter.record(Math.abs(current - lastInterval));
+            }
+            lastInterval = current;
+            windowEvents++;
+            long span = timestamp - windowStart;
+            if (span >= RATE_WINDOW) {
+                rate = windowEvents * 1e9 / span;
+                windowStart = timestamp;
+                windowEvents = 0;
+                windowed = true;
+            } else if (!windowed && span > 0) {
+                // Until the first window is complete
+                rate = windowEvents * 1e9 / span;
+            }
+        }
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * @return the number of events per second over the last window, 0 before the second event.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public LogHistogram getInterval() {
+        return interval;
+    }
+
+    public LogHistogram getJitter() {
+        return jitter;
+    }
+
+    public LogHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Appends the rate, and p50, p99 and maximum of the latency and jitter in milliseconds.
+     */
+    public StringBuilder appendSummary(StringBuilder sb) {
+        SensorFormat.appendFixed(sb, getRate(), 1).append(" Hz, latency ");
+        appendPercentiles(sb, latency).append(" ms, jitter ");
+        return appendPercentiles(sb, jitter).append(" ms");
+    }
+
+    /**
+     * Appends {@code p50/p99/max} of {@code histogram} in milliseconds.
+     */
+    public static StringBuilder appendPercentiles(StringBuilder sb, LogHistogram histogram) {
+        SensorFormat.appendFixed(sb, histogram.getPercentile(50) / NANOS_PER_MILLI, 2).append('/');
+        SensorFormat.appendFixed(sb, histogram.getPercentile(99) / NANOS_PER_MILLI, 2).append('/');
+        return SensorFormat.appendFixed(sb, histogram.getMax() / NANOS_PER_MILLI, 2);
+    }
+}
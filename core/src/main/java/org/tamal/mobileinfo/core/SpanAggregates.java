@@ -0,0 +1,125 @@
+package org.tamal.mobileinfo.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The count, minimum, mean and maximum duration of spans by name, accumulated across launches:
+ * they are written to and read back from a small tab-separated text file. Not thread-safe.
+ */
+public final class SpanAggregates {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final int COUNT = 0;
+    private static final int MIN = 1;
+    private static final int SUM = 2;
+    private static final int MAX = 3;
+
+    private final TreeMap<String, long[]> spans = new TreeMap<>();
+
+    public void add(String name, long nanos) {
+        long[] span = spans.get(name);
+        if (span == null) {
+            spans.put(name, new long[]{1, nanos, nanos, nanos});
+            return;
+        }
+        span[COUNT]++;
+        span[MIN] = Math.min(span[MIN], nanos);
+        span[SUM] += nanos;
+        span[MAX] = Math.max(span[MAX], nanos);
+    }
+
+    /**
+     * @return the names of the spans, in order.
+     */
+    public Set<String> getNames() {
+        return spans.keySet();
+    }
+
+    public long getCount(String name) {
+        long[] span = spans.get(name);
+        return span == null ? 0 : span[COUNT];
+    }
+
+    public long getMin(String name) {
+        return spans.get(name)[MIN];
+    }
+
+    public long getMax(String name) {
+        return spans.get(name)[MAX];
+    }
+
+    public double getMean(String name) {
+        long[] span = spans.get(name);
+        return (double) span[SUM] / span[COUNT];
+    }
+
+    /**
+     * Appends {@code min/avg/max} of the span in milliseconds, and its count.
+     */
+    public StringBuilder appendSummary(String name, StringBuilder sb) {
+        long[] span = spans.get(name);
+        SensorFormat.appendFixed(sb, span[MIN] / NANOS_PER_MILLI, 2).append('/');
+        SensorFormat.appendFixed(sb, getMean(name) / NANOS_PER_MILLI, 2).append('/');
+        SensorFormat.appendFixed(sb, span[MAX] / NANOS_PER_MILLI, 2).append(" ms");
+        return sb.append(" \u00d7").append(span[COUNT]);
+    }
+
+    /**
+     * Writes one line per span: its name, count, minimum, sum and maximum in nanoseconds.
+     */
+    public void write(Writer writer) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String name : spans.keySet()) {
+            long[] span = spans.get(name);
+            sb.setLength(0);
+            sb.append(name);
+            for (long value : span) {
+                sb.append('\t').append(value);
+            }
+            writer.append(sb).append('\n');
+        }
+    }
+
+    /**
+     * Adds the spans written by {@link #write}, skipping malformed lines.
+     *
+     * @return the number of spans read.
+     */
+    public int read(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        int read = 0;
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            String[] fields = line.split("\t");
+            if (fields.length != 5) {
+                continue;
+            }
+            long[] span = new long[4];
+            try {
+                for (int i = 0; i < span.length; i++) {
+                    span[i] = Long.parseLong(fields[i + 1]);
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (span[COUNT] <= 0) {
+                continue;
+            }
+            long[] existing = spans.get(fields[0]);
+            if (existing == null) {
+                spans.put(fields[0], span);
+            } else {
+                existing[COUNT] += span[COUNT];
+                existing[MIN] = Math.min(existing[MIN], span[MIN]);
+                existing[SUM] += span[SUM];
+                existing[MAX] = Math.max(existing[MAX], span[MAX]);
+            }
+            read++;
+        }
+        return read;
+    }
+}
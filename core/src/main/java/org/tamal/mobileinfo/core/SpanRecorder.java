@@ -0,0 +1,127 @@
+package org.tamal.mobileinfo.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records timed spans, such as the creation of a view or the collection of a section, in a
+ * preallocated ring of (id, start, end) longs. Recording a span allocates nothing and takes no
+ * lock: any thread claims the next slot and publishes it once written. Spans are recorded by
+ * an id, resolved from their name once and ahead of time.
+ * <p>
+ * A single reader {@link #drain drains} the spans recorded since its last drain into
+ * {@link SpanAggregates}. Spans overwritten before they were drained are counted as lost.
+ */
+public final class SpanRecorder {
+
+    private final int mask;
+    private final long[] spans;
+    // The sequence number plus one of the span published in each slot
+    private final AtomicLongArray published;
+    private final AtomicLong next = new AtomicLong();
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Replaced, not modified, when a name is added; guarded by ids when written
+    private volatile String[] names = new String[0];
+    // Only used by the draining thread
+    private long drained;
+    private long lost;
+
+    /**
+     * @param capacity the number of spans kept until drained, rounded up to a power of two.
+     */
+    public SpanRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        spans = new long[size * 3];
+        published = new AtomicLongArray(size);
+    }
+
+    /**
+     * @return the id of the span named {@code name}, the same for every call with that name.
+     * Only takes a lock, not the one of {@link #drain}, the first time a name is seen.
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (ids) {
+            id = ids.get(name);
+            if (id == null) {
+                String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+                id = names.length - 1;
+                names[id] = name;
+                // The name is published before its id
+                this.names = names;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Records a span of {@link System#nanoTime()} timestamps, from any thread.
+     */
+    public void record(int id, long start, long end) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        // Unpublished while written, the reader skips it if it gets there meanwhile
+        published.set(slot, 0);
+        spans[slot * 3] = id;
+        spans[slot * 3 + 1] = start;
+        spans[slot * 3 + 2] = end;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * @return the number of spans recorded so far.
+     */
+    public long getCount() {
+        return next.get();
+    }
+
+    /**
+     * @return the number of spans overwritten or still being written when drained.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * Adds every span recorded since the last drain to {@code aggregates}. Only ever called by
+     * one thread at a time.
+     *
+     * @return the number of spans added.
+     */
+    public synchronized int drain(SpanAggregates aggregates) {
+        long end = next.get();
+        long start = Math.max(drained, end - (mask + 1));
+        String[] names = this.names;
+        lost += start - drained;
+        int added = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence + 1) {
+                lost++;
+                continue;
+            }
+            int id = (int) spans[slot * 3];
+            long nanos = spans[slot * 3 + 2] - spans[slot * 3 + 1];
+            // Overwritten while it was read
+            if (published.get(slot) != sequence + 1) {
+                lost++;
+                continue;
+            }
+            aggregates.add(names[id], nanos);
+            added++;
+        }
+        drained = end;
+        return added;
+    }
+}
@@ -0,0 +1,350 @@
+package org.tamal.mobileinfo.core;
+
+/**
+ * The vibration spectrum of the newest samples of a vector sensor, such as an accelerometer
+ * or a gyroscope. Each axis, less its mean, is weighted by a Hann window and transformed by a
+ * real FFT, computed as a complex FFT of half the size, and the power spectra of the axes are
+ * summed: the spectrum of the vibration in any direction. The length of the vectors would not
+ * do, it rectifies a vibration around zero into twice its frequency. It reports the strongest
+ * peaks and the energy, the mean square of the signal, in frequency bands.
+ * <p>
+ * All arrays are allocated up front, analyzing allocates nothing. Not thread-safe.
+ */
+public final class SpectrumAnalyzer {
+
+    /**
+     * The number of peaks reported.
+     */
+    public static final int PEAKS = 3;
+    /**
+     * The edges of the bands in {@link #appendSummary}, in Hz.
+     */
+    private static final double[] BANDS = {0, 10, 100, Double.POSITIVE_INFINITY};
+    /**
+     * The mean of the squared Hann window, the energy it takes away.
+     */
+    private static final double WINDOW_POWER = 0.375;
+    /**
+     * The number of axes analyzed, the rest of the values such as a rotation vector's heading
+     * accuracy are not vibrations.
+     */
+    private static final int AXES = 3;
+    /**
+     * The interval, in median intervals, from which the samples are not contiguous.
+     */
+    private static final int GAP = 4;
+
+    private final int size;
+    private final float[] window;
+    private final float[][] axes = new float[AXES][];
+    private final long[] intervals;
+    // The complex FFT of half the size, in place
+    private final float[] re;
+    private final float[] im;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] reversed;
+    // The real FFT, twiddles of the full size
+    private final float[] cosFull;
+    private final float[] sinFull;
+    private final double[] power;
+    private final float[] sample = new float[SensorRingBuffer.MAX_VALUES];
+    private final double[] peakFrequencies = new double[PEAKS];
+    private final double[] peakPowers = new double[PEAKS];
+    private double sampleRate;
+    private int peaks;
+
+    /**
+     * @param size the number of samples analyzed, a power of two of at least 4.
+     */
+    public SpectrumAnalyzer(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two of at least 4: " + size);
+        }
+        this.size = size;
+        int half = size / 2;
+        window = new float[size];
+        for (int a = 0; a < AXES; a++) {
+            axes[a] = new float[size];
+        }
+        intervals = new long[size - 1];
+        re = new float[half];
+        im = new float[half];
+        cos = new float[half / 2];
+        sin = new float[half / 2];
+        reversed = new int[half];
+        cosFull = new float[half + 1];
+        sinFull = new float[half + 1];
+        power = new double[half + 1];
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+        }
+        for (int i = 0; i < half / 2; i++) {
+            cos[i] = (float) Math.cos(2 * Math.PI * i / half);
+            sin[i] = (float) Math.sin(2 * Math.PI * i / half);
+        }
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        for (int i = 0; i <= half; i++) {
+            cosFull[i] = (float) Math.cos(2 * Math.PI * i / size);
+            sinFull[i] = (float) Math.sin(2 * Math.PI * i / size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Analyzes the {@link #size()} samples before {@code end} in {@code buffer}, the sample
+     * rate is taken from the median interval of their timestamps.
+     *
+     * @return false if there are not enough samples, the writer overwrote them meanwhile or
+     * they are not contiguous, such as across a time the sensor was not registered.
+     */
+    public boolean analyze(SensorRingBuffer buffer, long end) {
+        long start = end - size;
+        if (start < 0) {
+            return false;
+        }
+        int axisCount = AXES;
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            int count = buffer.read(start + i, sample);
+            long timestamp = buffer.timestamp(start + i);
+            if (count < 0 || timestamp == Long.MIN_VALUE) {
+                return false;
+            }
+            axisCount = Math.min(axisCount, count);
+            for (int a = 0; a < axisCount; a++) {
+                axes[a][i] = sample[a];
+            }
+            if (i > 0) {
+                intervals[i - 1] = timestamp - previous;
+            }
+            previous = timestamp;
+        }
+        long median = select(intervals, intervals.length / 2);
+        if (median <= 0 || axisCount == 0) {
+            return false;
+        }
+        for (long interval : intervals) {
+            if (interval > GAP * median) {
+                return false;
+            }
+        }
+        this.sampleRate = 1e9 / median;
+        for (int a = 0; a < axisCount; a++) {
+            transform(axes[a], a > 0);
+        }
+        findPeaks();
+        return true;
+    }
+
+    /**
+     * Analyzes the first {@link #size()} values of {@code samples}, a single axis.
+     */
+    public void analyze(float[] samples, double sampleRate) {
+        this.sampleRate = sampleRate;
+        transform(samples, false);
+        findPeaks();
+    }
+
+    /**
+     * @return the {@code k}th smallest value of {@code values}, which it reorders.
+     */
+    static long select(long[] values, int k) {
+        int low = 0;
+        int high = values.length - 1;
+        while (low < high) {
+            long pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long swap = values[i];
+                    values[i++] = values[j];
+                    values[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    /**
+     * Sets the power spectrum to that of the first {@link #size()} values of {@code input}, or adds it.
+     */
+    private void transform(float[] input, boolean add) {
+        double mean = 0;
+        for (int i = 0; i < size; i++) {
+            mean += input[i];
+        }
+        mean /= size;
+        // Packs the even samples as real and the odd ones as imaginary parts, bit reversed
+        int half = size / 2;
+        for (int i = 0; i < half; i++) {
+            int j = reversed[i];
+            re[j] = (float) ((input[2 * i] - mean) * window[2 * i]);
+            im[j] = (float) ((input[2 * i + 1] - mean) * window[2 * i + 1]);
+        }
+        fft();
+        // Splits the half size transform into the even and odd parts of the real one
+        double scale = 2 / (WINDOW_POWER * size * size);
+        for (int k = 0; k <= half; k++) {
+            int k1 = k % half;
+            int k2 = (half - k) % half;
+            double a = re[k1];
+            double b = im[k1];
+            double c = re[k2];
+            double d = im[k2];
+            double evenRe = (a + c) / 2;
+            double evenIm = (b - d) / 2;
+            double oddRe = (b + d) / 2;
+            double oddIm = -(a - c) / 2;
+            double xRe = evenRe + cosFull[k] * oddRe + sinFull[k] * oddIm;
+            double xIm = evenIm + cosFull[k] * oddIm - sinFull[k] * oddRe;
+            // One-sided: every bin but the first and the last stands for two
+            double p = (xRe * xRe + xIm * xIm) * (k == 0 || k == half ? scale / 2 : scale);
+            power[k] = add ? power[k] + p : p;
+        }
+    }
+
+    /**
+     * The iterative radix-2 FFT of {@link #re} and {@link #im}, already in bit-reversed order.
+     */
+    private void fft() {
+        int n = re.length;
+        for (int length = 2; length <= n; length <<= 1) {
+            int halfLength = length >> 1;
+            int step = n / length;
+            for (int start = 0; start < n; start += length) {
+                for (int i = 0; i < halfLength; i++) {
+                    float wRe = cos[i * step];
+                    float wIm = -sin[i * step];
+                    int even = start + i;
+                    int odd = even + halfLength;
+                    float oRe = re[odd] * wRe - im[odd] * wIm;
+                    float oIm = re[odd] * wIm + im[odd] * wRe;
+                    re[odd] = re[even] - oRe;
+                    im[odd] = im[even] - oIm;
+                    re[even] += oRe;
+                    im[even] += oIm;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the {@link #PEAKS} strongest local maxima, placed between bins by a parabola.
+     */
+    private void findPeaks() {
+        peaks = 0;
+        for (int k = 1; k < power.length - 1; k++) {
+            double p = power[k];
+            if (p <= power[k - 1] || p < power[k + 1] || p == 0) {
+                continue;
+            }
+            int rank = peaks;
+            while (rank > 0 && peakPowers[rank - 1] < p) {
+                rank--;
+            }
+            if (rank == PEAKS) {
+                continue;
+            }
+            int moved = Math.min(peaks, PEAKS - 1) - rank;
+            System.arraycopy(peakPowers, rank, peakPowers, rank + 1, moved);
+            System.arraycopy(peakFrequencies, rank, peakFrequencies, rank + 1, moved);
+            double denominator = power[k - 1] - 2 * p + power[k + 1];
+            double offset = denominator == 0 ? 0 : 0.5 * (power[k - 1] - power[k + 1]) / denominator;
+            peakPowers[rank] = p;
+            peakFrequencies[rank] = (k + offset) * sampleRate / size;
+            peaks = Math.min(peaks + 1, PEAKS);
+        }
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of frequency bins, {@code size / 2 + 1}.
+     */
+    public int getBins() {
+        return power.length;
+    }
+
+    public double getFrequency(int bin) {
+        return bin * sampleRate / size;
+    }
+
+    /**
+     * @return the share of the mean square of the signal in {@code bin}.
+     */
+    public double getPower(int bin) {
+        return power[bin];
+    }
+
+    /**
+     * @return the number of peaks found, at most {@link #PEAKS}.
+     */
+    public int getPeaks() {
+        return peaks;
+    }
+
+    /**
+     * @param rank 0 for the strongest peak.
+     */
+    public double getPeakFrequency(int rank) {
+        return peakFrequencies[rank];
+    }
+
+    /**
+     * @return the mean square of the signal between {@code fromHz} inclusive and {@code toHz} exclusive.
+     */
+    public double getBandEnergy(double fromHz, double toHz) {
+        double energy = 0;
+        for (int k = 0; k < power.length; k++) {
+            double frequency = getFrequency(k);
+            if (frequency >= fromHz && frequency < toHz) {
+                energy += power[k];
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Appends the peak frequencies and the energy below 10 Hz, from 10 to 100 Hz and above 100 Hz.
+     */
+    public StringBuilder appendSummary(StringBuilder sb) {
+        sb.append("peaks ");
+        for (int i = 0; i < peaks; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            SensorFormat.appendFixed(sb, peakFrequencies[i], 1);
+        }
+        sb.append(" Hz, energy ");
+        for (int i = 0; i < BANDS.length - 1; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            SensorFormat.appendFixed(sb, getBandEnergy(BANDS[i], BANDS[i + 1]), 3);
+        }
+        return sb.append(" <10/10-100/>100 Hz");
+    }
+}
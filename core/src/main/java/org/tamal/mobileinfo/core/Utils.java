@@ -0,0 +1,117 @@
+package org.tamal.mobileinfo.core;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class Utils {
+
+    private static final Logger LOGGER = Logger.getLogger(Utils.class.getName());
+
+    private Utils() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Map<String, T> findConstants(Class<?> classType, @Nullable Class<T> fieldType, @Nullable String regex) {
+        return new TreeMap<>((Map<String, T>) ConstantIndex.of(classType, fieldType, regex).asMap());
+    }
+
+    public static String findConstant(Class<?> classType, Object value, String regex) {
+        String name = ConstantIndex.of(classType, null, regex).nameOf(value);
+        return name == null ? "" : name;
+    }
+
+    public static Map<String, Object> findProperties(Object object) {
+        return findProperties(object, "^(?:is|get)(.*)$");
+    }
+
+    public static Map<String, Object> findProperties(Object object, String regex) {
+        if (object == null) {
+            return new TreeMap<>();
+        }
+        return PropertyPlan.of(object.getClass(), regex).toMap(object);
+    }
+
+    public static Map<String, Method> findProperties(Class<?> cls) {
+        return findProperties(cls, "^(?:is|get)(.*)$");
+    }
+
+    public static Map<String, Method> findProperties(Class<?> cls, String regex) {
+        PropertyPlan plan = PropertyPlan.of(cls, regex);
+        Map<String, Method> map = new LinkedHashMap<>(plan.size() * 2);
+        for (int i = 0; i < plan.size(); i++) {
+            map.put(plan.getName(i), plan.getMethod(i));
+        }
+        return map;
+    }
+
+    public static Map<String, Object> findFields(Object object) {
+        Map<String, Object> map = new TreeMap<>();
+        if (object == null) {
+            return map;
+        }
+        for (Field field : object.getClass().getFields()) {
+            boolean isPublic = Modifier.isPublic(field.getModifiers());
+            boolean isStatic = Modifier.isStatic(field.getModifiers());
+            if (!isPublic || isStatic) {
+                continue;
+            }
+            try {
+                Object value = field.get(object);
+                map.put(field.getName(), value);
+            } catch (IllegalAccessException e) {
+                LOGGER.log(Level.FINE, "Field: " + field + " Error: " + e.getMessage() + " Cause: " + e.getCause());
+            }
+        }
+        return map;
+    }
+
+    public static String toString(Object obj) {
+        return toString(obj, null, null, null, null);
+    }
+
+    public static String toString(Object obj, String separator, String start, String end, String keyValSep) {
+        if (separator == null) {
+            separator = ValueWriter.SEPARATOR;
+        }
+        if (start == null) {
+            start = "";
+        }
+        if (end == null) {
+            end = "";
+        }
+        if (keyValSep == null) {
+            keyValSep = ValueWriter.KEY_VALUE_SEPARATOR;
+        }
+        return ValueWriter.get().format(obj, separator, start, end, keyValSep).toString();
+    }
+
+    public static void expand(Map<String, Object> map, String key, Class<?> classType, String regex) {
+        Object value = map.get(key);
+        if (value == null) {
+            return;
+        }
+        if (value.getClass().isArray()) {
+            ConstantIndex index = ConstantIndex.of(classType, value.getClass().getComponentType(), regex);
+            int length = Array.getLength(value);
+            String[] array = new String[length];
+            for (int i = 0; i < length; i++) {
+                array[i] = index.nameOf(Array.get(value, i));
+            }
+            map.put(key, array);
+        } else {
+            value = findConstant(classType, value, regex);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.tamal.mobileinfo.core;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Formats values for display into a reusable buffer. Arrays, collections and maps are
+ * written element by element, nested ones with the default separators, and objects which
+ * do not override {@link Object#toString()} are written as nothing.
+ */
+final class ValueWriter {
+
+    static final String SEPARATOR = "\n";
+    static final String KEY_VALUE_SEPARATOR = ":";
+    static final int MAX_DEPTH = 8;
+    static final int MAX_LENGTH = 16 * 1024;
+    private static final String ELLIPSIS = "\u2026";
+    private static final ConcurrentMap<Class<?>, Boolean> CUSTOM_TO_STRING = new ConcurrentHashMap<>();
+    private static final ThreadLocal<ValueWriter> LOCAL = new ThreadLocal<ValueWriter>() {
+        @Override
+        protected ValueWriter initialValue() {
+            return new ValueWriter(MAX_DEPTH, MAX_LENGTH);
+        }
+    };
+
+    private final StringBuilder buffer = new StringBuilder();
+    private final int maxDepth;
+    private final int maxLength;
+    private boolean busy;
+
+    ValueWriter(int maxDepth, int maxLength) {
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return the writer of the calling thread, or a new one while that writer is in use.
+     */
+    static ValueWriter get() {
+        ValueWriter writer = LOCAL.get();
+        return writer.busy ? new ValueWriter(writer.maxDepth, writer.maxLength) : writer;
+    }
+
+    /**
+     * Replaces the buffer content with {@code obj}, cut off with an ellipsis after
+     * {@code maxLength} characters or {@code maxDepth} nesting levels.
+     */
+    ValueWriter format(Object obj, String separator, String start, String end, String keyValSep) {
+        buffer.setLength(0);
+        busy = true;
+        try {
+            write(obj, separator, start, end, keyValSep, 0);
+        } finally {
+            busy = false;
+        }
+        if (isFull()) {
+            buffer.setLength(maxLength);
+            buffer.append(ELLIPSIS);
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private void write(Object obj, String separator, String start, String end, String keyValSep, int depth) {
+        if (isFull()) {
+            return;
+        }
+        if (obj == null) {
+            buffer.append("null");
+            return;
+        }
+        Class<?> cls = obj.getClass();
+        if (cls.isArray()) {
+            if (depth >= maxDepth) {
+                buffer.append(ELLIPSIS);
+                return;
+            }
+            buffer.append(start);
+            writeArray(obj, cls.getComponentType(), separator, depth);
+            buffer.append(end);
+        } else if (obj instanceof Collection) {
+            if (depth >= maxDepth) {
+                buffer.append(ELLIPSIS);
+                return;
+            }
+            buffer.append(start);
+            boolean first = true;
+            for (Object item : (Collection<?>) obj) {
+                if (!first) {
+                    buffer.append(separator);
+                }
+                first = false;
+                writeDefault(item, depth + 1);
+                if (isFull()) {
+                    return;
+                }
+            }
+            buffer.append(end);
+        } else if (obj instanceof Map) {
+            if (depth >= maxDepth) {
+                buffer.append(ELLIPSIS);
+                return;
+            }
+            buffer.append(start);
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                if (!first) {
+                    buffer.append(separator);
+                }
+                first = false;
+                writeDefault(entry.getKey(), depth + 1);
+                buffer.append(keyValSep);
+                writeDefault(entry.getValue(), depth + 1);
+                if (isFull()) {
+                    return;
+                }
+            }
+            buffer.append(end);
+        } else {
+            writeLeaf(obj, cls);
+        }
+    }
+
+    private void writeDefault(Object obj, int depth) {
+        write(obj, SEPARATOR, "", "", KEY_VALUE_SEPARATOR, depth);
+    }
+
+    private void writeArray(Object array, Class<?> type, String separator, int depth) {
+        if (type == int.class) {
+            int[] a = (int[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == long.class) {
+            long[] a = (long[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == float.class) {
+            float[] a = (float[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == double.class) {
+            double[] a = (double[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == boolean.class) {
+            boolean[] a = (boolean[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == char.class) {
+            char[] a = (char[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == byte.class) {
+            byte[] a = (byte[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else if (type == short.class) {
+            short[] a = (short[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator).append(a[i]);
+            }
+        } else {
+            Object[] a = (Object[]) array;
+            for (int i = 0; i < a.length && !isFull(); i++) {
+                separate(i, separator);
+                writeDefault(a[i], depth + 1);
+            }
+        }
+    }
+
+    private StringBuilder separate(int index, String separator) {
+        return index == 0 ? buffer : buffer.append(separator);
+    }
+
+    private void writeLeaf(Object obj, Class<?> cls) {
+        if (obj instanceof String) {
+            buffer.append((String) obj);
+        } else if (obj instanceof Integer) {
+            buffer.append(((Integer) obj).intValue());
+        } else if (obj instanceof Long) {
+            buffer.append(((Long) obj).longValue());
+        } else if (obj instanceof Boolean) {
+            buffer.append(((Boolean) obj).booleanValue());
+        } else if (obj instanceof Float) {
+            buffer.append(((Float) obj).floatValue());
+        } else if (obj instanceof Double) {
+            buffer.append(((Double) obj).doubleValue());
+        } else if (obj instanceof CharSequence) {
+            buffer.append((CharSequence) obj);
+        } else if (hasCustomToString(cls)) {
+            buffer.append(obj);
+        }
+    }
+
+    private boolean isFull() {
+        return buffer.length() >= maxLength;
+    }
+
+    private static boolean hasCustomToString(Class<?> cls) {
+        Boolean custom = CUSTOM_TO_STRING.get(cls);
+        if (custom == null) {
+            try {
+                custom = cls.getMethod("toString").getDeclaringClass() != Object.class;
+            } catch (NoSuchMethodException e) {
+                custom = true;
+            }
+            CUSTOM_TO_STRING.put(cls, custom);
+        }
+        return custom;
+    }
+}
@@ -0,0 +1,58 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Calendar;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link Utils#findConstant} against the linear field scan it replaced.
+ */
+public class ConstantIndexTest {
+
+    private static final String REGEX = "^([A-Z_]+)$";
+
+    @Test
+    public void findConstant_matchesScan() {
+        for (int value = -1; value < 64; value++) {
+            assertEquals(scan(Calendar.class, value, REGEX), Utils.findConstant(Calendar.class, value, REGEX));
+        }
+        assertEquals("DECEMBER", Utils.findConstant(Calendar.class, Calendar.DECEMBER, "^(DEC.*)$"));
+    }
+
+    /**
+     * The lookup as it was before {@link ConstantIndex}: regex compile and field scan per call.
+     */
+    private static String scan(Class<?> classType, Object value, String regex) {
+        Pattern pattern = regex == null ? null : Pattern.compile(regex);
+        for (Field field : classType.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isPublic(modifiers) || !Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers)) {
+                continue;
+            }
+            String name = field.getName();
+            if (pattern != null) {
+                Matcher matcher = pattern.matcher(name);
+                if (!matcher.find()) {
+                    continue;
+                }
+                if (matcher.groupCount() == 1) {
+                    name = matcher.group(1);
+                }
+            }
+            try {
+                if (field.get(null).equals(value)) {
+                    return name;
+                }
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return "";
+    }
+}
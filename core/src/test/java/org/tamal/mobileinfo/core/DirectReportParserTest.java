@@ -0,0 +1,93 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parses synthetic shared memory laid out like a sensor direct channel.
+ */
+public class DirectReportParserTest {
+
+    private static final int RECORDS = 8;
+
+    private final ByteBuffer memory = ByteBuffer.allocate(RECORDS * DirectReportParser.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final DirectReportParser parser = new DirectReportParser();
+    private final List<long[]> reports = new ArrayList<>();
+    private final DirectReportParser.Listener listener = new DirectReportParser.Listener() {
+        @Override
+        public void onReport(int token, int type, long timestamp, float[] values) {
+            reports.add(new long[]{token, type, timestamp, (long) values[0], (long) values[15]});
+        }
+    };
+
+    @Test
+    public void parse_emptyMemory() {
+        assertEquals(0, parser.parse(memory, 0, RECORDS, listener));
+        assertEquals(0, parser.getCounter());
+    }
+
+    @Test
+    public void parse_stopsAtOldRecord() {
+        write(0, 1, 1);
+        write(1, 2, 2);
+        assertEquals(2, parser.parse(memory, 0, RECORDS, listener));
+        assertEquals(2, parser.getCounter());
+        assertArrayEquals(new long[]{7, 1, 1000, 1, 16}, reports.get(0));
+        assertArrayEquals(new long[]{7, 1, 2000, 2, 17}, reports.get(1));
+        // Nothing new at the next position
+        assertEquals(0, parser.parse(memory, 2 * DirectReportParser.RECORD_SIZE, RECORDS - 2, listener));
+        write(2, 3, 3);
+        assertEquals(1, parser.parse(memory, 2 * DirectReportParser.RECORD_SIZE, RECORDS - 2, listener));
+        assertEquals(0, parser.getLost());
+    }
+
+    @Test
+    public void parse_wrapsAround() {
+        for (int i = 0; i < RECORDS; i++) {
+            write(i, i + 1, i + 1);
+        }
+        assertEquals(RECORDS, parser.parse(memory, 0, RECORDS, listener));
+        // The writer wrapped and overwrote the first two records
+        write(0, RECORDS + 1, 9);
+        write(1, RECORDS + 2, 10);
+        assertEquals(2, parser.parse(memory, 0, RECORDS, listener));
+        assertEquals(RECORDS + 2, parser.getCounter());
+        assertEquals(10, reports.get(RECORDS + 1)[3]);
+    }
+
+    @Test
+    public void parse_countsLostRecords() {
+        write(0, 1, 1);
+        assertEquals(1, parser.parse(memory, 0, RECORDS, listener));
+        write(1, 5, 5);
+        assertEquals(1, parser.parse(memory, DirectReportParser.RECORD_SIZE, RECORDS - 1, listener));
+        assertEquals(3, parser.getLost());
+    }
+
+    @Test
+    public void parse_unsignedCounter() {
+        write(0, 0xfffffffe, 1);
+        write(1, 0xffffffff, 2);
+        assertEquals(2, parser.parse(memory, 0, RECORDS, listener));
+        assertEquals(0xffffffffL, parser.getCounter());
+    }
+
+    private void write(int record, int counter, int value) {
+        int position = record * DirectReportParser.RECORD_SIZE;
+        memory.putInt(position, DirectReportParser.RECORD_SIZE);
+        memory.putInt(position + 4, 7);
+        memory.putInt(position + 8, 1);
+        memory.putInt(position + 12, counter);
+        memory.putLong(position + 16, value * 1000L);
+        for (int i = 0; i < DirectReportParser.VALUE_COUNT; i++) {
+            memory.putFloat(position + 24 + 4 * i, value + i);
+        }
+    }
+}
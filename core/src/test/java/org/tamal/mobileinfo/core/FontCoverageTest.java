@@ -0,0 +1,125 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses the cmap of synthetic font files and collections.
+ */
+public class FontCoverageTest {
+
+    private static final int GLYPHS = 100;
+
+    @Test
+    public void parse_format4() {
+        FontCoverage[] fonts = FontCoverage.parse(font(0, format4()));
+        assertEquals(1, fonts.length);
+        CoverageBitmap coverage = fonts[0].getCoverage();
+        assertEquals(GLYPHS, fonts[0].getGlyphCount());
+        // 'A'..'Z' by delta, 0x3b1..0x3b3 by glyph array with glyph 0 at 0x3b2
+        assertEquals(28, coverage.size());
+        assertTrue(coverage.containsAll("HELLO\nWORLD"));
+        assertFalse(coverage.containsAll("Hello"));
+        assertTrue(coverage.contains(0x3b1));
+        assertFalse(coverage.contains(0x3b2));
+        assertTrue(coverage.contains(0x3b3));
+        assertFalse(coverage.contains(0xffff));
+    }
+
+    @Test
+    public void parse_prefersFormat12() {
+        CoverageBitmap coverage = FontCoverage.parse(font(0, format12()))[0].getCoverage();
+        // 'a'..'z', and the emoji but for those past the glyph count
+        assertEquals(26 + GLYPHS - 50, coverage.size());
+        assertTrue(coverage.containsAll("hello\ud83d\ude00"));
+        assertFalse(coverage.contains('A'));
+        assertFalse(coverage.contains(0x1f600 + GLYPHS - 50));
+    }
+
+    @Test
+    public void parse_collection() {
+        byte[] first = font(0, format4()).array();
+        byte[] second = font(0, format12()).array();
+        ByteBuffer collection = ByteBuffer.allocate(20 + first.length + second.length);
+        collection.putInt(0x74746366).putInt(0x10000).putInt(2);
+        collection.putInt(20).putInt(20 + first.length);
+        // Table offsets are from the start of the collection
+        collection.put(font(20, format4()).array()).put(font(20 + first.length, format12()).array());
+        collection.rewind();
+        FontCoverage[] fonts = FontCoverage.parse(collection);
+        assertEquals(2, fonts.length);
+        assertTrue(fonts[0].getCoverage().contains('A'));
+        assertTrue(fonts[1].getCoverage().contains('a'));
+        assertEquals(0, collection.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_truncated() {
+        ByteBuffer font = font(0, format4());
+        font.limit(40);
+        FontCoverage.parse(font);
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        FontCoverage font = FontCoverage.parse(font(0, format12()))[0];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        font.write(new DataOutputStream(bytes));
+        FontCoverage read = FontCoverage.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(font.getGlyphCount(), read.getGlyphCount());
+        assertEquals(font.getCoverage().size(), read.getCoverage().size());
+        assertTrue(read.getCoverage().contains(0x1f600));
+    }
+
+    /**
+     * A font with a maxp and a cmap table holding {@code subtable} as its Windows Unicode one,
+     * its table offsets relative to {@code base}.
+     */
+    private static ByteBuffer font(int base, byte[] subtable) {
+        int maxp = 12 + 2 * 16;
+        int cmap = maxp + 6;
+        ByteBuffer font = ByteBuffer.allocate(cmap + 12 + subtable.length);
+        font.putInt(0x10000).putShort((short) 2).putShort((short) 0).putInt(0);
+        font.putInt(0x636d6170).putInt(0).putInt(base + cmap).putInt(12 + subtable.length);
+        font.putInt(0x6d617870).putInt(0).putInt(base + maxp).putInt(6);
+        font.putInt(0x5000).putShort((short) GLYPHS);
+        font.putShort((short) 0).putShort((short) 1);
+        font.putShort((short) 3).putShort((short) 1).putInt(12);
+        font.put(subtable);
+        font.rewind();
+        return font;
+    }
+
+    private static byte[] format4() {
+        // Three segments: 'A'..'Z' by delta, 0x3b1..0x3b3 by glyph array, and the final 0xffff
+        ByteBuffer subtable = ByteBuffer.allocate(16 + 3 * 8 + 3 * 2);
+        subtable.putShort((short) 4).putShort((short) subtable.capacity()).putShort((short) 0);
+        subtable.putShort((short) 6).putShort((short) 4).putShort((short) 1).putShort((short) 2);
+        subtable.putShort((short) 'Z').putShort((short) 0x3b3).putShort((short) 0xffff);
+        subtable.putShort((short) 0);
+        subtable.putShort((short) 'A').putShort((short) 0x3b1).putShort((short) 0xffff);
+        subtable.putShort((short) (10 - 'A')).putShort((short) 0).putShort((short) 1);
+        // The glyph array follows the last range offset: 2 bytes past the second one
+        subtable.putShort((short) 0).putShort((short) 4).putShort((short) 0);
+        subtable.putShort((short) 40).putShort((short) 0).putShort((short) 41);
+        return subtable.array();
+    }
+
+    private static byte[] format12() {
+        ByteBuffer subtable = ByteBuffer.allocate(16 + 2 * 12);
+        subtable.putShort((short) 12).putShort((short) 0).putInt(subtable.capacity()).putInt(0).putInt(2);
+        subtable.putInt('a').putInt('z').putInt(1);
+        subtable.putInt(0x1f600).putInt(0x1f64f).putInt(50);
+        return subtable.array();
+    }
+}
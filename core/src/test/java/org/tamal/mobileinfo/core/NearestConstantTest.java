@@ -0,0 +1,75 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares {@link NearestConstant} against the linear scan it replaced.
+ */
+public class NearestConstantTest {
+
+    @Test
+    public void nameOf_matchesFindNearest() {
+        // SensorManager.LIGHT_*
+        Map<String, Float> light = new TreeMap<>();
+        light.put("SUNLIGHT_MAX", 120000.0f);
+        light.put("SUNLIGHT", 110000.0f);
+        light.put("SHADE", 20000.0f);
+        light.put("OVERCAST", 10000.0f);
+        light.put("SUNRISE", 400.0f);
+        light.put("CLOUDY", 100.0f);
+        light.put("FULLMOON", 0.25f);
+        light.put("NO_MOON", 0.001f);
+        NearestConstant table = new NearestConstant(light);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            float value = random.nextFloat() * (1 << random.nextInt(18));
+            assertEquals(String.valueOf(value), findNearest(light, value), table.nameOf(value));
+        }
+        for (float value : light.values()) {
+            assertEquals(findNearest(light, value), table.nameOf(value));
+        }
+    }
+
+    @Test
+    public void nameOf_equalValuesKeepFirstName() {
+        Map<String, Integer> density = new TreeMap<>();
+        density.put("DEFAULT", 160);
+        density.put("LOW", 120);
+        density.put("MEDIUM", 160);
+        NearestConstant table = new NearestConstant(density);
+        assertEquals("DEFAULT", table.nameOf(160));
+        assertEquals("DEFAULT", table.nameOf(150));
+        assertEquals("LOW", table.nameOf(140));
+        assertEquals("LOW", table.nameOf(-1));
+    }
+
+    @Test
+    public void nameOf_empty() {
+        assertNull(new NearestConstant(Collections.<String, Float>emptyMap()).nameOf(1));
+    }
+
+    /**
+     * The lookup as it was before {@link NearestConstant}: a scan of every entry per call.
+     */
+    private static String findNearest(Map<String, Float> map, float value) {
+        float absValue = Math.abs(value);
+        String name = null;
+        float minDelta = Float.MAX_VALUE;
+        for (Map.Entry<String, Float> entry : map.entrySet()) {
+            float delta = Math.abs(entry.getValue() - absValue);
+            if (delta < minDelta) {
+                minDelta = delta;
+                name = entry.getKey();
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,42 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the properties of an object through its cached plan.
+ */
+public class PropertyPlanTest {
+
+    @Test
+    public void toMap_skipsFailedGetters() {
+        Map<String, Object> map = Utils.findProperties(new Bean());
+        assertEquals(2, map.size());
+        assertEquals("value", map.get("Name"));
+        // A getter returning null is shown, unlike one which throws
+        assertTrue(map.containsKey("Missing"));
+        assertNull(map.get("Missing"));
+        assertFalse(map.containsKey("Broken"));
+    }
+
+    public static class Bean {
+
+        public String getName() {
+            return "value";
+        }
+
+        public String getMissing() {
+            return null;
+        }
+
+        public String getBroken() {
+            throw new IllegalStateException("Not available");
+        }
+    }
+}
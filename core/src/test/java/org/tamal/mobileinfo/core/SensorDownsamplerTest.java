@@ -0,0 +1,54 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Downsamples synthetic signals written into a {@link SensorRingBuffer}.
+ */
+public class SensorDownsamplerTest {
+
+    private final SensorRingBuffer buffer = new SensorRingBuffer(64);
+    private final SensorDownsampler downsampler = new SensorDownsampler(8);
+
+    @Test
+    public void downsample_keepsSpikes() {
+        for (int i = 0; i < 64; i++) {
+            // A flat line with one spike up and one down, the second value is a ramp
+            float value = i == 10 ? 100 : i == 50 ? -100 : 0;
+            buffer.write(i, 0, new float[]{value, i}, 2);
+        }
+        assertEquals(8, downsampler.downsample(buffer, 0, 64, 100));
+        assertEquals(2, downsampler.getSeries());
+        assertEquals(100, downsampler.getSecond(1, 0), 0);
+        assertEquals(0, downsampler.getFirst(1, 0), 0);
+        assertEquals(-100, downsampler.getSecond(6, 0), 0);
+        assertEquals(-100, downsampler.getLowest(), 0);
+        assertEquals(100, downsampler.getHighest(), 0);
+        // A rising ramp has its minimum first
+        assertEquals(8, downsampler.getFirst(1, 1), 0);
+        assertEquals(15, downsampler.getSecond(1, 1), 0);
+    }
+
+    @Test
+    public void downsample_fewerSamplesThanBuckets() {
+        for (int i = 0; i < 3; i++) {
+            buffer.write(i, 0, new float[]{i}, 1);
+        }
+        assertEquals(3, downsampler.downsample(buffer, 0, 3, 8));
+        assertEquals(2, downsampler.getFirst(2, 0), 0);
+        assertEquals(2, downsampler.getSecond(2, 0), 0);
+    }
+
+    @Test
+    public void downsample_skipsOverwrittenSamples() {
+        for (int i = 0; i < 100; i++) {
+            buffer.write(i, 0, new float[]{i}, 1);
+        }
+        // The first 37 samples are overwritten, so the three buckets up to 37 are empty
+        assertEquals(5, downsampler.downsample(buffer, 0, 100, 8));
+        assertEquals(37, downsampler.getLowest(), 0);
+        assertEquals(0, downsampler.downsample(buffer, 0, 0, 8));
+    }
+}
@@ -0,0 +1,88 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks {@link SensorFormat} against {@link String#format} and that formatting an event does not allocate.
+ */
+public class SensorFormatTest {
+
+    private static final String UNIT = "m/s\u00b2";
+
+    @Test
+    public void appendSigned_matchesFormat() {
+        float[] values = {0f, -0f, 0.004f, -0.004f, 0.005f, 0.125f, -0.125f, 1.005f, 9.80665f, -273.15f,
+                65535f, 1e9f, 3.5303614E-7f, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (float value : values) {
+            assertFormat(value);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            assertFormat((random.nextFloat() - 0.5f) * (1 << random.nextInt(20)));
+        }
+    }
+
+    @Test
+    public void append_matchesFormat() {
+        float[] v = {0.12f, -0.34f, 9.79f, 0.5f, -1.5f, 2.25f};
+        StringBuilder sb = new StringBuilder();
+        assertEquals(String.format(Locale.ROOT, "%+.2f %s", v[0], UNIT),
+                SensorFormat.append(sb, SensorFormat.VALUE, v, v.length, UNIT).toString());
+        sb.setLength(0);
+        assertEquals(String.format(Locale.ROOT, "x=%1$+.2f%4$s, y=%2$+.2f%4$s, z=%3$+.2f%4$s", v[2], v[0], v[1], UNIT),
+                SensorFormat.append(sb, SensorFormat.ZXY, v, v.length, UNIT).toString());
+        sb.setLength(0);
+        assertEquals(String.format(Locale.ROOT, "Rotation: x=%1$+.2f, y=%2$+.2f, z=%3$+.2f rad/s\nDrift: x=%4$+.2f, y=%5$+.2f, z=%6$+.2f rad/s",
+                v[0], v[1], v[2], v[3], v[4], v[5]),
+                SensorFormat.append(sb, SensorFormat.GYROSCOPE_UNCALIBRATED, v, v.length, UNIT).toString());
+        sb.setLength(0);
+        assertEquals(String.format(Locale.ROOT, "sin(\u03b8/2)*(x, y, z)=(%1$+.2f, %2$+.2f, %3$+.2f), cos(\u03b8/2)=%4$+.2f", v[0], v[1], v[2], v[3]),
+                SensorFormat.append(sb, SensorFormat.ROTATION, v, v.length, UNIT).toString());
+        sb.setLength(0);
+        assertEquals("+0.12, -0.34, +9.79, +0.50, -1.50, +2.25",
+                SensorFormat.append(sb, SensorFormat.VALUES, v, v.length, UNIT).toString());
+    }
+
+    @Test
+    public void append_doesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        float[] v = new float[6];
+        StringBuilder sb = new StringBuilder(128);
+        // Warm up so the buffer has grown and the formatting is compiled
+        for (int i = 0; i < 20_000; i++) {
+            event(sb, v, i);
+        }
+        long before = bean.getThreadAllocatedBytes(thread);
+        long overhead = bean.getThreadAllocatedBytes(thread) - before;
+        before = bean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 10_000; i++) {
+            event(sb, v, i);
+        }
+        long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+        assertEquals("bytes allocated by 10000 events", 0, allocated);
+    }
+
+    private static void event(StringBuilder sb, float[] v, int i) {
+        for (int j = 0; j < v.length; j++) {
+            v[j] = (i - 5000 + j) * 0.37f;
+        }
+        sb.setLength(0);
+        SensorFormat.append(sb, i % 6, v, v.length, UNIT);
+    }
+
+    private static void assertFormat(float value) {
+        String expected = String.format(Locale.ROOT, "%+.2f", value);
+        assertEquals(expected, SensorFormat.appendSigned(new StringBuilder(), value).toString());
+    }
+}
@@ -0,0 +1,89 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Derives the orientation of synthetic readings of a device in a known rotation.
+ */
+public class SensorFusionTest {
+
+    private static final float[] GRAVITY_WORLD = {0, 0, 9.81f};
+    // North and down, as in the northern hemisphere
+    private static final float[] FIELD_WORLD = {0, 22, -40};
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void getRotationMatrix_matchesRotationVector() {
+        float[] rotationVector = quaternion(0.3, -0.5, 0.8, 1.1);
+        float[] expected = new float[9];
+        SensorFusion.getRotationMatrixFromVector(expected, rotationVector, 4);
+        float[] actual = new float[9];
+        assertTrue(SensorFusion.getRotationMatrix(actual, toDevice(expected, GRAVITY_WORLD), toDevice(expected, FIELD_WORLD)));
+        assertEquals(0, SensorFusion.angleBetween(expected, actual), 1e-4);
+        float[] orientation = new float[3];
+        SensorFusion.getOrientation(actual, orientation);
+        float[] expectedOrientation = new float[3];
+        SensorFusion.getOrientation(expected, expectedOrientation);
+        assertEquals(expectedOrientation[0], orientation[0], 1e-4);
+        assertEquals(expectedOrientation[1], orientation[1], 1e-4);
+        assertEquals(expectedOrientation[2], orientation[2], 1e-4);
+    }
+
+    @Test
+    public void getRotationMatrix_freeFall() {
+        assertFalse(SensorFusion.getRotationMatrix(new float[9], new float[]{0, 0, 0.5f}, FIELD_WORLD));
+    }
+
+    @Test
+    public void onAccelerometer_linearAccelerationAndTilt() {
+        SensorFusion fusion = new SensorFusion();
+        // Standing upright, then a short push along x
+        fusion.onAccelerometer(0, new float[]{0, 9.81f, 0});
+        assertEquals(90, fusion.getTilt(), 1e-3);
+        fusion.onAccelerometer(SECOND / 100, new float[]{2, 9.81f, 0});
+        assertEquals(2, fusion.getLinearAcceleration()[0], 0.1);
+        assertEquals(0, fusion.getLinearAcceleration()[1], 1e-3);
+    }
+
+    @Test
+    public void onGyroscope_turnsHeading() {
+        SensorFusion fusion = new SensorFusion();
+        // Lying flat, the top pointing 90 degrees east
+        float[] rotation = new float[9];
+        SensorFusion.getRotationMatrixFromVector(rotation, quaternion(0, 0, 1, -Math.PI / 2), 4);
+        fusion.onMagneticField(toDevice(rotation, FIELD_WORLD));
+        fusion.onAccelerometer(0, toDevice(rotation, GRAVITY_WORLD));
+        assertTrue(fusion.hasRotation());
+        assertEquals(90, fusion.getHeading(), 1e-3);
+        assertEquals(Math.PI / 2, fusion.getOrientation()[0], 1e-4);
+        // Turning counterclockwise for a second at 0.5 rad/s
+        for (int i = 0; i <= 100; i++) {
+            fusion.onGyroscope(i * SECOND / 100, new float[]{0, 0, 0.5f});
+        }
+        assertEquals(90 - Math.toDegrees(0.5), fusion.getHeading(), 0.01);
+    }
+
+    /**
+     * @return the rotation vector of {@code angle} radians about the axis.
+     */
+    private static float[] quaternion(double x, double y, double z, double angle) {
+        double norm = Math.sqrt(x * x + y * y + z * z);
+        double sin = Math.sin(angle / 2) / norm;
+        return new float[]{(float) (x * sin), (float) (y * sin), (float) (z * sin), (float) Math.cos(angle / 2)};
+    }
+
+    /**
+     * @return {@code world} in device coordinates, the rotation matrix transposed times the vector.
+     */
+    private static float[] toDevice(float[] r, float[] world) {
+        float[] device = new float[3];
+        for (int i = 0; i < 3; i++) {
+            device[i] = r[i] * world[0] + r[3 + i] * world[1] + r[6 + i] * world[2];
+        }
+        return device;
+    }
+}
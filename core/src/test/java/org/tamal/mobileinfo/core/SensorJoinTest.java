@@ -0,0 +1,123 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Joins synthetic sensors reporting at different rates.
+ */
+public class SensorJoinTest {
+
+    private static final long MS = 1000000;
+
+    private final SensorRingBuffer accelerometer = new SensorRingBuffer(64);
+    private final SensorRingBuffer rotation = new SensorRingBuffer(64);
+    private final SensorJoin join = new SensorJoin(new SensorRingBuffer[]{accelerometer, rotation},
+            new int[]{3, 4}, new boolean[]{false, true}, 10 * MS, 16);
+
+    @Test
+    public void advance_interpolatesLinearly() {
+        // x rises by 1 per ms, every 4 ms
+        for (int t = 0; t <= 40; t += 4) {
+            accelerometer.write(t * MS, 3, new float[]{t, 1, 2}, 3);
+        }
+        rotation.write(0, 3, new float[]{0, 0, 0, 1}, 4);
+        assertEquals(0, join.advance());
+        // The clock starts after the newest samples, at 10 ms
+        rotation.write(40 * MS, 3, new float[]{0, 0, 0, 1}, 4);
+        assertEquals(0, join.advance());
+        for (int t = 44; t <= 70; t += 4) {
+            accelerometer.write(t * MS, 3, new float[]{t, 1, 2}, 3);
+        }
+        rotation.write(65 * MS, 3, new float[]{0, 0, 0, 1}, 4);
+        assertEquals(2, join.advance());
+        assertEquals(7, join.getColumnCount());
+        assertEquals(50 * MS, join.getTimestamp(0));
+        assertEquals(50, join.getValue(0, 0), 1e-4);
+        assertEquals(60, join.getValue(1, 0), 1e-4);
+        assertEquals(2, join.getValue(1, 2), 0);
+        assertEquals(1, join.getValue(1, 6), 0);
+    }
+
+    @Test
+    public void advance_slerpsRotations() {
+        accelerometer.write(0, 3, new float[]{0, 0, 0}, 3);
+        rotation.write(0, 3, new float[]{0, 0, 0, 1}, 4);
+        assertEquals(0, join.advance());
+        accelerometer.write(20 * MS, 3, new float[]{0, 0, 0}, 3);
+        // 90 degrees around z, without the scalar part
+        float half = (float) Math.sqrt(0.5);
+        rotation.write(20 * MS, 3, new float[]{0, 0, half}, 3);
+        assertEquals(2, join.advance());
+        // Half way is 45 degrees around z
+        assertEquals(Math.sin(Math.PI / 8), join.getValue(0, 5), 1e-5);
+        assertEquals(Math.cos(Math.PI / 8), join.getValue(0, 6), 1e-5);
+        assertEquals(half, join.getValue(1, 5), 1e-5);
+    }
+
+    @Test
+    public void advance_boundedRows() throws IOException {
+        accelerometer.write(0, 3, new float[]{0, 0, 0}, 3);
+        rotation.write(0, 3, new float[]{0, 0, 0, 1}, 4);
+        join.advance();
+        for (int i = 1; i <= 20; i++) {
+            accelerometer.write(i * 10 * MS, 3, new float[]{i, 0, 0}, 3);
+            rotation.write(i * 10 * MS, 3, new float[]{0, 0, 0, 1}, 4);
+            assertEquals(1, join.advance());
+        }
+        assertEquals(20, join.getRowCount());
+        assertFalse(join.isLive(0));
+        assertTrue(join.isLive(19));
+        StringWriter writer = new StringWriter();
+        String[] names = {"ax", "ay", "az", "x", "y", "z", "w"};
+        assertEquals(16 - 1, join.writeCsv(writer, names));
+        String[] lines = writer.toString().split("\n");
+        assertEquals("timestamp,ax,ay,az,x,y,z,w", lines[0]);
+        assertEquals("200000000,20.0,0.0,0.0,0.0,0.0,0.0,1.0", lines[lines.length - 1]);
+    }
+
+    @Test
+    public void snapshot_isIndependentOfTheJoin() throws IOException {
+        accelerometer.write(0, 3, new float[]{0, 0, 0}, 3);
+        rotation.write(0, 3, new float[]{0, 0, 0, 1}, 4);
+        join.advance();
+        for (int i = 1; i <= 3; i++) {
+            accelerometer.write(i * 10 * MS, 3, new float[]{i, 0, 0}, 3);
+            rotation.write(i * 10 * MS, 3, new float[]{0, 0, 0, 1}, 4);
+            join.advance();
+        }
+        SensorJoin.Snapshot snapshot = join.snapshot();
+        // Laps the ring after the snapshot was taken
+        for (int i = 4; i <= 40; i++) {
+            accelerometer.write(i * 10 * MS, 3, new float[]{i, 0, 0}, 3);
+            rotation.write(i * 10 * MS, 3, new float[]{0, 0, 0, 1}, 4);
+            join.advance();
+        }
+        assertEquals(3, snapshot.getRowCount());
+        StringWriter writer = new StringWriter();
+        assertEquals(3, snapshot.writeCsv(writer, new String[]{"ax", "ay", "az", "x", "y", "z", "w"}));
+        String[] lines = writer.toString().split("\n");
+        assertEquals("10000000,1.0,0.0,0.0,0.0,0.0,0.0,1.0", lines[1]);
+        assertEquals("30000000,3.0,0.0,0.0,0.0,0.0,0.0,1.0", lines[3]);
+    }
+
+    @Test
+    public void advance_resyncsWhenOverwritten() {
+        accelerometer.write(0, 3, new float[]{0, 0, 0}, 3);
+        rotation.write(0, 3, new float[]{0, 0, 0, 1}, 4);
+        join.advance();
+        // The accelerometer laps its buffer before the rotation vector reports again
+        for (int i = 1; i <= 100; i++) {
+            accelerometer.write(i * MS, 3, new float[]{i, 0, 0}, 3);
+        }
+        rotation.write(100 * MS, 3, new float[]{0, 0, 0, 1}, 4);
+        assertEquals(0, join.advance());
+        assertEquals(1, join.getResyncs());
+    }
+}
@@ -0,0 +1,45 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the rate over a recent window and breaks the intervals on re-registration.
+ */
+public class SensorStatsTest {
+
+    private static final long MS = 1000000;
+
+    private final SensorStats stats = new SensorStats();
+    private long timestamp;
+
+    @Test
+    public void getRate_overRecentWindow() {
+        assertEquals(0, stats.getRate(), 0);
+        record(100, 5 * MS);
+        assertEquals(200, stats.getRate(), 1);
+        record(500, 20 * MS);
+        assertEquals(50, stats.getRate(), 1);
+    }
+
+    @Test
+    public void restart_skipsTheGap() {
+        record(100, 5 * MS);
+        stats.restart();
+        timestamp += 60000 * MS;
+        record(400, 5 * MS);
+        // The gap is neither an interval nor a jitter sample, nor does it lower the rate
+        assertEquals(5 * MS, stats.getInterval().getMax());
+        assertEquals(0, stats.getJitter().getMax());
+        assertEquals(498, stats.getInterval().getCount());
+        assertEquals(200, stats.getRate(), 1);
+    }
+
+    private void record(int count, long interval) {
+        for (int i = 0; i < count; i++) {
+            timestamp += interval;
+            stats.record(timestamp, timestamp + MS);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Records spans, drains them into aggregates and persists those.
+ */
+public class SpanRecorderTest {
+
+    private static final long MS = 1000000;
+
+    private final SpanRecorder recorder = new SpanRecorder(4);
+    private final SpanAggregates aggregates = new SpanAggregates();
+
+    @Test
+    public void drain_aggregatesByName() {
+        int create = recorder.id("onCreate");
+        int load = recorder.id("load");
+        assertEquals(create, recorder.id("onCreate"));
+        recorder.record(create, 0, 3 * MS);
+        recorder.record(load, 10 * MS, 11 * MS);
+        recorder.record(create, 20 * MS, 21 * MS);
+        assertEquals(3, recorder.drain(aggregates));
+        assertEquals(0, recorder.drain(aggregates));
+        assertEquals(2, aggregates.getCount("onCreate"));
+        assertEquals(MS, aggregates.getMin("onCreate"));
+        assertEquals(2 * MS, aggregates.getMean("onCreate"), 0);
+        assertEquals(3 * MS, aggregates.getMax("onCreate"));
+        assertEquals("1.00/2.00/3.00 ms \u00d72", aggregates.appendSummary("onCreate", new StringBuilder()).toString());
+    }
+
+    @Test
+    public void drain_countsOverwrittenSpansAsLost() {
+        int id = recorder.id("span");
+        for (int i = 0; i < 6; i++) {
+            recorder.record(id, 0, i);
+        }
+        assertEquals(4, recorder.drain(aggregates));
+        assertEquals(2, recorder.getLost());
+        assertEquals(2, aggregates.getMin("span"));
+    }
+
+    @Test
+    public void writeAndRead_accumulateAcrossLaunches() throws IOException {
+        aggregates.add("span", 2 * MS);
+        aggregates.add("span", 4 * MS);
+        StringWriter writer = new StringWriter();
+        aggregates.write(writer);
+
+        SpanAggregates next = new SpanAggregates();
+        next.add("span", MS);
+        assertEquals(1, next.read(new StringReader(writer + "malformed\nspan\tx\t1\t1\t1\n")));
+        assertEquals(3, next.getCount("span"));
+        assertEquals(MS, next.getMin("span"));
+        assertEquals(7 * MS / 3.0, next.getMean("span"), 1e-6);
+        assertEquals(4 * MS, next.getMax("span"));
+    }
+}
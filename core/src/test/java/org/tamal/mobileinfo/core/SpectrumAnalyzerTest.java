@@ -0,0 +1,139 @@
+package org.tamal.mobileinfo.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the real FFT against a plain DFT and the reported peaks and energies of known signals.
+ */
+public class SpectrumAnalyzerTest {
+
+    private static final int SIZE = 256;
+    private static final double RATE = 400;
+
+    private final SpectrumAnalyzer analyzer = new SpectrumAnalyzer(SIZE);
+
+    @Test
+    public void analyze_matchesDft() {
+        Random random = new Random(42);
+        float[] samples = new float[SIZE];
+        double mean = 0;
+        for (int i = 0; i < SIZE; i++) {
+            samples[i] = (float) random.nextGaussian();
+            mean += samples[i];
+        }
+        mean /= SIZE;
+        analyzer.analyze(samples, RATE);
+        for (int k = 0; k <= SIZE / 2; k++) {
+            double re = 0;
+            double im = 0;
+            for (int n = 0; n < SIZE; n++) {
+                double x = (samples[n] - mean) * (0.5 - 0.5 * Math.cos(2 * Math.PI * n / SIZE));
+                re += x * Math.cos(2 * Math.PI * k * n / SIZE);
+                im -= x * Math.sin(2 * Math.PI * k * n / SIZE);
+            }
+            double expected = (re * re + im * im) * 2 / (0.375 * SIZE * SIZE) / (k == 0 || k == SIZE / 2 ? 2 : 1);
+            assertEquals("bin " + k, expected, analyzer.getPower(k), 1e-4 + expected * 1e-4);
+        }
+    }
+
+    @Test
+    public void analyze_sines() {
+        float[] samples = new float[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            // 2 m/s2 at 50 Hz and 0.5 m/s2 at 120 Hz on top of gravity
+            samples[i] = (float) (9.81 + 2 * Math.sin(2 * Math.PI * 50 * i / RATE) + 0.5 * Math.sin(2 * Math.PI * 120 * i / RATE));
+        }
+        analyzer.analyze(samples, RATE);
+        assertTrue(analyzer.getPeaks() >= 2);
+        assertEquals(50, analyzer.getPeakFrequency(0), 0.5);
+        assertEquals(120, analyzer.getPeakFrequency(1), 0.5);
+        // The mean square of a sine is half its squared amplitude
+        assertEquals(2, analyzer.getBandEnergy(10, 100), 0.05);
+        assertEquals(0.125, analyzer.getBandEnergy(100, RATE), 0.01);
+        assertEquals(0, analyzer.getBandEnergy(0, 10), 0.01);
+    }
+
+    @Test
+    public void analyze_ringBuffer() {
+        SensorRingBuffer buffer = new SensorRingBuffer(512);
+        long period = (long) (1e9 / RATE);
+        for (int i = 0; i < 300; i++) {
+            float vibration = (float) Math.sin(2 * Math.PI * 25 * i / RATE);
+            buffer.write(i * period, 3, new float[]{0, 0, 9.81f + vibration}, 3);
+        }
+        assertTrue(analyzer.analyze(buffer, buffer.sequence()));
+        assertEquals(RATE, analyzer.getSampleRate(), 0.01);
+        assertEquals(25, analyzer.getPeakFrequency(0), 0.5);
+        StringBuilder sb = analyzer.appendSummary(new StringBuilder());
+        assertTrue(sb.toString(), sb.toString().startsWith("peaks 25.0"));
+    }
+
+    @Test
+    public void analyze_gyroscope() {
+        SensorRingBuffer buffer = new SensorRingBuffer(512);
+        long period = (long) (1e9 / RATE);
+        for (int i = 0; i < 300; i++) {
+            // Rotating back and forth around x, the vector length would peak at 50 Hz
+            float rotation = (float) Math.sin(2 * Math.PI * 25 * i / RATE);
+            buffer.write(i * period, 3, new float[]{rotation, 0, 0}, 3);
+        }
+        assertTrue(analyzer.analyze(buffer, buffer.sequence()));
+        assertEquals(25, analyzer.getPeakFrequency(0), 0.5);
+        assertEquals(0.5, analyzer.getBandEnergy(10, 100), 0.02);
+    }
+
+    @Test
+    public void analyze_horizontalVibration() {
+        SensorRingBuffer buffer = new SensorRingBuffer(512);
+        long period = (long) (1e9 / RATE);
+        for (int i = 0; i < 300; i++) {
+            float vibration = (float) Math.sin(2 * Math.PI * 25 * i / RATE);
+            buffer.write(i * period, 3, new float[]{vibration, 0.5f * vibration, 9.81f}, 3);
+        }
+        assertTrue(analyzer.analyze(buffer, buffer.sequence()));
+        assertEquals(25, analyzer.getPeakFrequency(0), 0.5);
+        // The energies of the axes add up
+        assertEquals(0.625, analyzer.getBandEnergy(10, 100), 0.02);
+        assertEquals(0, analyzer.getBandEnergy(0, 10), 0.01);
+    }
+
+    @Test
+    public void analyze_acrossGap() {
+        SensorRingBuffer buffer = new SensorRingBuffer(1024);
+        long period = (long) (1e9 / RATE);
+        long timestamp = 0;
+        for (int i = 0; i < 600; i++) {
+            // Unregistered for a second after 300 samples, the rest with a little jitter
+            timestamp += i == 300 ? 1000000000L : period + (i % 3 - 1) * period / 20;
+            float vibration = (float) Math.sin(2 * Math.PI * 25 * timestamp / 1e9);
+            buffer.write(timestamp, 3, new float[]{0, 0, 9.81f + vibration}, 3);
+            if (i == 400) {
+                assertFalse(analyzer.analyze(buffer, buffer.sequence()));
+            }
+        }
+        assertTrue(analyzer.analyze(buffer, buffer.sequence()));
+        assertEquals(RATE, analyzer.getSampleRate(), 0.01);
+        assertEquals(25, analyzer.getPeakFrequency(0), 0.5);
+    }
+
+    @Test
+    public void select_median() {
+        long[] values = {5, 1, 4, 1, 5, 9, 2, 6, 5};
+        assertEquals(5, SpectrumAnalyzer.select(values, values.length / 2));
+        assertEquals(1, SpectrumAnalyzer.select(values, 0));
+        assertEquals(9, SpectrumAnalyzer.select(values, values.length - 1));
+    }
+
+    @Test
+    public void analyze_notEnoughSamples() {
+        SensorRingBuffer buffer = new SensorRingBuffer(512);
+        buffer.write(0, 3, new float[]{0, 0, 0}, 3);
+        assertFalse(analyzer.analyze(buffer, buffer.sequence()));
+    }
+}
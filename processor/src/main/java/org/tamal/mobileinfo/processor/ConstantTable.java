@@ -0,0 +1,26 @@
+package org.tamal.mobileinfo.processor;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a name/value table of the public static final fields of {@link #type()} whose
+ * name matches {@link #regex()}, with the same matching rules as {@code Utils.findConstants}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target({})
+public @interface ConstantTable {
+
+    Class<?> type();
+
+    /**
+     * Only fields of this type are included, {@code void.class} includes every type.
+     */
+    Class<?> fieldType() default void.class;
+
+    /**
+     * Empty matches every field.
+     */
+    String regex() default "";
+}
@@ -0,0 +1,172 @@
+package org.tamal.mobileinfo.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Emits the {@link ConstantTables} of a class as literal name/value arrays, so the tables
+ * are available at runtime without reflecting over the SDK classes.
+ */
+public class ConstantTableProcessor extends AbstractProcessor {
+
+    private static final String CONSTANT_INDEX = "org.tamal.mobileinfo.core.ConstantIndex";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ConstantTables.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ConstantTables.class)) {
+            try {
+                generate((TypeElement) element, element.getAnnotation(ConstantTables.class));
+            } catch (IOException e) {
+                error(element, e.toString());
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement element, ConstantTables tables) throws IOException {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        String packageName = packageElement.getQualifiedName().toString();
+        String className = element.getSimpleName() + "Tables";
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("/**\n * Generated by ").append(getClass().getSimpleName())
+                .append(" from {@link ").append(element.getSimpleName()).append("}, do not edit.\n */\n");
+        sb.append("final class ").append(className).append(" {\n\n");
+        sb.append("    private ").append(className).append("() {\n    }\n\n");
+        sb.append("    static void install(int sdkInt) {\n");
+        sb.append("        boolean complete = sdkInt <= ").append(tables.sdk()).append(";\n");
+        for (ConstantTable table : tables.value()) {
+            if (!appendTable(sb, element, table)) {
+                return;
+            }
+        }
+        sb.append("    }\n}\n");
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? className : packageName + "." + className, element);
+        try (Writer writer = file.openWriter()) {
+            writer.write(sb.toString());
+        }
+    }
+
+    private boolean appendTable(StringBuilder sb, TypeElement element, ConstantTable table) {
+        TypeMirror type = typeOf(table, true);
+        TypeMirror fieldType = typeOf(table, false);
+        if (type.getKind() != TypeKind.DECLARED) {
+            error(element, "Not a class: " + type);
+            return false;
+        }
+        TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+        String regex = table.regex();
+        Pattern pattern;
+        try {
+            pattern = regex.isEmpty() ? null : Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            error(element, e.getMessage());
+            return false;
+        }
+        // Field order is kept, the first field wins a reverse lookup just like reflection
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || !modifiers.contains(Modifier.STATIC) || !modifiers.contains(Modifier.FINAL)) {
+                continue;
+            }
+            if (fieldType.getKind() != TypeKind.VOID && !processingEnv.getTypeUtils().isSameType(field.asType(), fieldType)) {
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            if (pattern != null) {
+                Matcher matcher = pattern.matcher(name);
+                if (!matcher.find()) {
+                    continue;
+                }
+                if (matcher.groupCount() == 1) {
+                    name = matcher.group(1);
+                }
+            }
+            Object value = field.getConstantValue();
+            if (value == null) {
+                error(element, typeElement.getQualifiedName() + "." + field.getSimpleName() + " is not a compile-time constant");
+                return false;
+            }
+            names.add(processingEnv.getElementUtils().getConstantExpression(name));
+            values.add(processingEnv.getElementUtils().getConstantExpression(value));
+        }
+        if (names.isEmpty()) {
+            error(element, "No constants in " + typeElement.getQualifiedName() + " match " + regex);
+            return false;
+        }
+        sb.append("        ").append(CONSTANT_INDEX).append(".preload(\"")
+                .append(processingEnv.getElementUtils().getBinaryName(typeElement)).append("\", ")
+                .append(fieldType.getKind() == TypeKind.VOID ? "null" : fieldType + ".class").append(", ")
+                .append(regex.isEmpty() ? "null" : processingEnv.getElementUtils().getConstantExpression(regex))
+                .append(", complete,\n");
+        sb.append("                new String[]{");
+        join(sb, names);
+        sb.append("},\n                new Object[]{");
+        join(sb, values);
+        sb.append("});\n");
+        return true;
+    }
+
+    private static void join(StringBuilder sb, List<String> items) {
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(items.get(i));
+        }
+    }
+
+    private static TypeMirror typeOf(ConstantTable table, boolean declaringType) {
+        try {
+            if (declaringType) {
+                table.type();
+            } else {
+                table.fieldType();
+            }
+        } catch (MirroredTypeException e) {
+            return e.getTypeMirror();
+        }
+        throw new IllegalStateException("Class values are only available as type mirrors");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,23 @@
+package org.tamal.mobileinfo.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates {@code <AnnotatedClass>Tables} with a static {@code install()} method that
+ * registers every declared table with {@code ConstantIndex}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface ConstantTables {
+
+    /**
+     * The SDK level the tables are generated from. On newer devices the tables may miss
+     * constants, so lookups fall back to reflection there.
+     */
+    int sdk();
+
+    ConstantTable[] value();
+}